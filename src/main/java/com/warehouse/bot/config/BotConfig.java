@@ -1,6 +1,9 @@
 package com.warehouse.bot.config;
 
+import com.warehouse.bot.service.GracefulShutdown;
 import com.warehouse.bot.service.TelegramBotService;
+import com.warehouse.bot.service.WarmupService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +13,7 @@ import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 @Configuration
+@Slf4j
 public class BotConfig {
     
     @Value("${telegram.bot.token}")
@@ -21,20 +25,280 @@ public class BotConfig {
     @Value("${warehouse.service.url}")
     private String warehouseServiceUrl;
     
+    @Value("${warehouse.cache.fresh-ms:1000}")
+    private long cacheFreshMillis;
+    
+    @Value("${telegram.photo.mode:text}")
+    private String photoMode;
+    
+    @Value("${telegram.photo.base-dir:photos}")
+    private String photoBaseDir;
+    
+    @Value("${telegram.photo.cache-file:data/photo-file-ids.tsv}")
+    private String photoCacheFile;
+    
+    @Value("${warehouse.import.concurrency:4}")
+    private int importConcurrency;
+    
+    @Value("${warehouse.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+    
+    @Value("${warehouse.coalesce.window-ms:2000}")
+    private long coalesceWindowMillis;
+    
+    @Value("${warehouse.coalesce.journal:data/pending-deltas.log}")
+    private String coalesceJournal;
+    
+    @Value("${bot.warmup.enabled:true}")
+    private boolean warmupEnabled;
+    
+    @Value("${bot.warmup.connections:4}")
+    private int warmupConnections;
+    
+    @Value("${bot.warmup.iterations:200}")
+    private int warmupIterations;
+    
+    @Value("${bot.dispatch.threads:8}")
+    private int dispatchThreads;
+    
+    @Value("${bot.dispatch.shed-queue-depth:200}")
+    private int dispatchShedQueueDepth;
+    
+    @Value("${bot.shutdown.drain-timeout-ms:20000}")
+    private long shutdownDrainTimeoutMillis;
+    
+    @Value("${bot.session.journal:data/sessions.journal}")
+    private String sessionJournalFile;
+    
+    @Value("${bot.session.journal-capacity:4194304}")
+    private int sessionJournalCapacity;
+    
+    @Value("${bot.cluster.enabled:false}")
+    private boolean clusterEnabled;
+    
+    @Value("${bot.cluster.instance-id:node-1}")
+    private String clusterInstanceId;
+    
+    @Value("${bot.cluster.nodes:}")
+    private String clusterNodes;
+    
+    @Value("${bot.cluster.virtual-nodes:128}")
+    private int clusterVirtualNodes;
+    
+    @Value("${bot.cluster.ingress:true}")
+    private boolean clusterIngress;
+    
+    @Value("${bot.cluster.secret:}")
+    private String clusterSecret;
+    
+    @Value("${bot.update.deadline-ms:10000}")
+    private long updateDeadlineMillis;
+    
+    @Value("${warehouse.retry.max-attempts:4}")
+    private int retryMaxAttempts;
+    
+    @Value("${warehouse.retry.base-backoff-ms:100}")
+    private long retryBaseBackoffMillis;
+    
+    @Value("${warehouse.retry.max-backoff-ms:2000}")
+    private long retryMaxBackoffMillis;
+    
+    @Value("${bot.ratelimit.enabled:true}")
+    private boolean rateLimitEnabled;
+    
+    @Value("${bot.ratelimit.chat.per-minute:30}")
+    private int rateLimitChatPerMinute;
+    
+    @Value("${bot.ratelimit.chat.burst:10}")
+    private int rateLimitChatBurst;
+    
+    @Value("${bot.ratelimit.command.per-minute:6}")
+    private int rateLimitCommandPerMinute;
+    
+    @Value("${bot.ratelimit.command.burst:3}")
+    private int rateLimitCommandBurst;
+    
+    @Value("${bot.ratelimit.commands:All products,Export catalog (CSV),Export catalog with attributes (CSV.gz)}")
+    private String rateLimitCommands;
+    
+    @Value("${bot.ratelimit.max-tracked:100000}")
+    private int rateLimitMaxTracked;
+    
+    @Value("${warehouse.limiter.enabled:true}")
+    private boolean limiterEnabled;
+    
+    @Value("${warehouse.limiter.initial-limit:10}")
+    private int limiterInitialLimit;
+    
+    @Value("${warehouse.limiter.min-limit:2}")
+    private int limiterMinLimit;
+    
+    @Value("${warehouse.limiter.max-limit:20}")
+    private int limiterMaxLimit;
+    
+    @Value("${warehouse.limiter.max-wait-ms:100}")
+    private long limiterMaxWaitMillis;
+    
+    @Value("${warehouse.limiter.max-queue:50}")
+    private int limiterMaxQueue;
+    
+    @Value("${warehouse.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+    
+    @Value("${warehouse.hedge.percentile:0.95}")
+    private double hedgePercentile;
+    
+    @Value("${warehouse.hedge.min-delay-ms:20}")
+    private long hedgeMinDelayMillis;
+    
+    @Value("${warehouse.hedge.budget-ratio:0.1}")
+    private double hedgeBudgetRatio;
+    
+    @Value("${warehouse.hedge.threads:16}")
+    private int hedgeThreads;
+    
+    @Value("${warehouse.audit.directory:data/audit}")
+    private String auditDirectory;
+    
+    @Value("${warehouse.audit.segment-bytes:67108864}")
+    private long auditSegmentBytes;
+    
+    @Value("${warehouse.audit.fsync-ms:50}")
+    private long auditFsyncMillis;
+    
+    @Value("${warehouse.audit.secret:}")
+    private String auditSecret;
+    
+    @Value("${warehouse.outbox.file:data/outbox.log}")
+    private String outboxFile;
+    
+    @Value("${warehouse.outbox.replay-interval-ms:5000}")
+    private long outboxReplayIntervalMillis;
+    
+    @Value("${bot.logging.sample-every:50}")
+    private long logSampleEvery;
+    
+    @Value("${warehouse.alerts.low-stock-threshold:5}")
+    private int lowStockThreshold;
+    
+    @Value("${warehouse.alerts.low-stock-rearm-margin:5}")
+    private int lowStockRearmMargin;
+    
+    @Value("${warehouse.alerts.subscribers-file:data/low-stock-subscribers.txt}")
+    private String lowStockSubscribersFile;
+    
+    @Value("${bot.watch.file:data/product-watches.log}")
+    private String watchFile;
+    
+    @Value("${bot.watch.flush-ms:5000}")
+    private long watchFlushMillis;
+    
+    @Value("${bot.watch.max-per-chat:100}")
+    private int watchMaxPerChat;
+    
+    @Value("${bot.chats.registry-file:data/chats.bin}")
+    private String chatRegistryFile;
+    
+    @Value("${bot.broadcast.admin-chat-ids:}")
+    private String broadcastAdminChatIds;
+    
+    @Value("${bot.telegram.send-rate-per-second:30}")
+    private int telegramSendRatePerSecond;
+    
+    @Value("${bot.broadcast.checkpoint-file:data/broadcast.checkpoint}")
+    private String broadcastCheckpointFile;
+    
+    @Value("${bot.broadcast.checkpoint-every:20}")
+    private int broadcastCheckpointEvery;
+    
+    @Value("${warehouse.directory:}")
+    private String warehouseDirectory;
+    
     // Getters
     public String getBotToken() { return botToken; }
     public String getBotUsername() { return botUsername; }
     public String getWarehouseServiceUrl() { return warehouseServiceUrl; }
+    public long getCacheFreshMillis() { return cacheFreshMillis; }
+    public boolean isPhotoMode() { return "photo".equalsIgnoreCase(photoMode); }
+    public String getPhotoBaseDir() { return photoBaseDir; }
+    public String getPhotoCacheFile() { return photoCacheFile; }
+    public int getImportConcurrency() { return importConcurrency; }
+    public boolean isCoalesceEnabled() { return coalesceEnabled; }
+    public long getCoalesceWindowMillis() { return coalesceWindowMillis; }
+    public String getCoalesceJournal() { return coalesceJournal; }
+    public boolean isWarmupEnabled() { return warmupEnabled; }
+    public int getWarmupConnections() { return warmupConnections; }
+    public int getWarmupIterations() { return warmupIterations; }
+    public int getDispatchThreads() { return dispatchThreads; }
+    public int getDispatchShedQueueDepth() { return dispatchShedQueueDepth; }
+    public long getShutdownDrainTimeoutMillis() { return shutdownDrainTimeoutMillis; }
+    public String getSessionJournalFile() { return sessionJournalFile; }
+    public int getSessionJournalCapacity() { return sessionJournalCapacity; }
+    public boolean isClusterEnabled() { return clusterEnabled; }
+    public String getClusterInstanceId() { return clusterInstanceId; }
+    public String getClusterNodes() { return clusterNodes; }
+    public int getClusterVirtualNodes() { return clusterVirtualNodes; }
+    public boolean isClusterIngress() { return !clusterEnabled || clusterIngress; }
+    public String getClusterSecret() { return clusterSecret; }
+    public long getUpdateDeadlineMillis() { return updateDeadlineMillis; }
+    public int getRetryMaxAttempts() { return retryMaxAttempts; }
+    public long getRetryBaseBackoffMillis() { return retryBaseBackoffMillis; }
+    public long getRetryMaxBackoffMillis() { return retryMaxBackoffMillis; }
+    public boolean isRateLimitEnabled() { return rateLimitEnabled; }
+    public int getRateLimitChatPerMinute() { return rateLimitChatPerMinute; }
+    public int getRateLimitChatBurst() { return rateLimitChatBurst; }
+    public int getRateLimitCommandPerMinute() { return rateLimitCommandPerMinute; }
+    public int getRateLimitCommandBurst() { return rateLimitCommandBurst; }
+    public String getRateLimitCommands() { return rateLimitCommands; }
+    public int getRateLimitMaxTracked() { return rateLimitMaxTracked; }
+    public boolean isLimiterEnabled() { return limiterEnabled; }
+    public int getLimiterInitialLimit() { return limiterInitialLimit; }
+    public int getLimiterMinLimit() { return limiterMinLimit; }
+    public int getLimiterMaxLimit() { return limiterMaxLimit; }
+    public long getLimiterMaxWaitMillis() { return limiterMaxWaitMillis; }
+    public int getLimiterMaxQueue() { return limiterMaxQueue; }
+    public boolean isHedgeEnabled() { return hedgeEnabled; }
+    public double getHedgePercentile() { return hedgePercentile; }
+    public long getHedgeMinDelayMillis() { return hedgeMinDelayMillis; }
+    public double getHedgeBudgetRatio() { return hedgeBudgetRatio; }
+    public int getHedgeThreads() { return hedgeThreads; }
+    public String getAuditDirectory() { return auditDirectory; }
+    public long getAuditSegmentBytes() { return auditSegmentBytes; }
+    public long getAuditFsyncMillis() { return auditFsyncMillis; }
+    public String getAuditSecret() { return auditSecret; }
+    public String getOutboxFile() { return outboxFile; }
+    public long getOutboxReplayIntervalMillis() { return outboxReplayIntervalMillis; }
+    public long getLogSampleEvery() { return logSampleEvery; }
+    public int getLowStockThreshold() { return lowStockThreshold; }
+    public int getLowStockRearmMargin() { return lowStockRearmMargin; }
+    public String getLowStockSubscribersFile() { return lowStockSubscribersFile; }
+    public String getWatchFile() { return watchFile; }
+    public long getWatchFlushMillis() { return watchFlushMillis; }
+    public int getWatchMaxPerChat() { return watchMaxPerChat; }
+    public String getChatRegistryFile() { return chatRegistryFile; }
+    public String getBroadcastAdminChatIds() { return broadcastAdminChatIds; }
+    public int getTelegramSendRatePerSecond() { return telegramSendRatePerSecond; }
+    public String getBroadcastCheckpointFile() { return broadcastCheckpointFile; }
+    public int getBroadcastCheckpointEvery() { return broadcastCheckpointEvery; }
+    public String getWarehouseDirectory() { return warehouseDirectory; }
     
     /**
-     * Register the Telegram bot manually
+     * Register the Telegram bot manually, after the warmup so the first updates hit a warm instance.
+     * In cluster mode only the ingress instance polls Telegram; the others receive forwarded updates.
      */
     @Bean
-    public TelegramBotsApi telegramBotsApi(TelegramBotService telegramBotService) {
+    public TelegramBotsApi telegramBotsApi(TelegramBotService telegramBotService, WarmupService warmupService,
+                                           GracefulShutdown gracefulShutdown) {
+        warmupService.warmup();
         try
         {
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(telegramBotService);
+            if (!isClusterIngress())
+            {
+                log.info("✅ Cluster instance {} started without polling", clusterInstanceId);
+                return botsApi;
+            }
+            gracefulShutdown.setBotSession(botsApi.registerBot(telegramBotService));
             System.out.println("✅ Telegram Bot registered successfully: " + botUsername);
             return botsApi;
         } catch (TelegramApiException e) {
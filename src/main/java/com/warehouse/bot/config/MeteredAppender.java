@@ -0,0 +1,89 @@
+package com.warehouse.bot.config;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+
+/**
+ * Pass-through appender that adds up, per thread, the time spent handing events to its child appenders.
+ * The update handler drains the total after each update, which gives the logging cost of that update.
+ */
+public class MeteredAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent>
+{
+
+    private static final ThreadLocal<long[]> THREAD_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    /**
+     * Returns the nanoseconds this thread spent in logging since the previous call and resets the total
+     */
+    public static long drainThreadNanos()
+    {
+        long[] total = THREAD_NANOS.get();
+        long nanos = total[0];
+        total[0] = 0;
+        return nanos;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event)
+    {
+        long started = System.nanoTime();
+        appenders.appendLoopOnAppenders(event);
+        THREAD_NANOS.get()[0] += System.nanoTime() - started;
+    }
+
+    @Override
+    public void stop()
+    {
+        super.stop();
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender)
+    {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders()
+    {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name)
+    {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender)
+    {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders()
+    {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender)
+    {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name)
+    {
+        return appenders.detachAppender(name);
+    }
+}
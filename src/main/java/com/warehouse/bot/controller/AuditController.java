@@ -0,0 +1,53 @@
+package com.warehouse.bot.controller;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.service.InventoryAuditJournal;
+import com.warehouse.bot.service.SharedSecret;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Read access to the inventory audit journal: mutations of one product in a time range (epoch millis).
+ * Requires warehouse.audit.secret in the X-Audit-Secret header; with no secret configured every request
+ * is refused. A query reads only the product's own records through the journal's product index;
+ * limit is capped at MAX_LIMIT.
+ */
+@RestController
+public class AuditController
+{
+
+    public static final String SECRET_HEADER = "X-Audit-Secret";
+    private static final int MAX_LIMIT = 5000;
+
+    private final InventoryAuditJournal auditJournal;
+    private final BotConfig botConfig;
+
+    public AuditController(InventoryAuditJournal auditJournal, BotConfig botConfig)
+    {
+        this.auditJournal = auditJournal;
+        this.botConfig = botConfig;
+    }
+
+    @GetMapping("/audit/products/{productId}")
+    public ResponseEntity<List<InventoryAuditJournal.AuditRecord>> productHistory(
+            @RequestHeader(value = SECRET_HEADER, required = false) String secret,
+            @PathVariable long productId,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(required = false) Long to,
+            @RequestParam(defaultValue = "500") int limit)
+    {
+        if (!SharedSecret.matches(botConfig.getAuditSecret(), secret))
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(auditJournal.query(productId, from, to != null ? to : System.currentTimeMillis(),
+                Math.max(1, Math.min(limit, MAX_LIMIT))));
+    }
+}
@@ -0,0 +1,45 @@
+package com.warehouse.bot.controller;
+
+import com.warehouse.bot.service.ClusterUpdateForwarder;
+import com.warehouse.bot.service.TelegramBotService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Receives updates forwarded by the polling instance for chats owned by this instance
+ */
+@RestController
+@ConditionalOnProperty(name = "bot.cluster.enabled", havingValue = "true")
+public class ClusterController
+{
+
+    private final TelegramBotService telegramBotService;
+    private final ClusterUpdateForwarder clusterUpdateForwarder;
+
+    public ClusterController(TelegramBotService telegramBotService, ClusterUpdateForwarder clusterUpdateForwarder)
+    {
+        this.telegramBotService = telegramBotService;
+        this.clusterUpdateForwarder = clusterUpdateForwarder;
+    }
+
+    @PostMapping(ClusterUpdateForwarder.FORWARD_PATH)
+    public ResponseEntity<Void> receive(@RequestHeader(value = ClusterUpdateForwarder.SECRET_HEADER, required = false) String secret,
+                                        @RequestBody Update update)
+    {
+        if (!clusterUpdateForwarder.isValidSecret(secret))
+        {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        // 503 while this one shuts down: the polling instance retries until the update's deadline,
+        // then only tells the chat to try again; it never handles an owned chat's update itself
+        return telegramBotService.acceptForwarded(update)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+}
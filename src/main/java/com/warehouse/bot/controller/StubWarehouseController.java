@@ -0,0 +1,276 @@
+package com.warehouse.bot.controller;
+
+import com.warehouse.bot.model.Product;
+import com.warehouse.bot.model.ThermocupAttributes;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for the warehouse service, enabled with the "stub" profile.
+ * Serves the same endpoints the bot calls and emits ETag / Last-Modified validators
+ * so conditional reads can be exercised locally.
+ */
+@RestController
+@Profile("stub")
+@Slf4j
+public class StubWarehouseController
+{
+
+    private final Map<Integer, Product> products = new ConcurrentSkipListMap<>();
+    private final Map<Integer, ThermocupAttributes> thermocups = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final AtomicLong version = new AtomicLong(1);
+    private volatile long lastModified = System.currentTimeMillis();
+    private final Map<String, ResponseEntity<String>> appliedKeys = new LinkedHashMap<>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResponseEntity<String>> eldest)
+        {
+            return size() > 10_000;
+        }
+    };
+
+    @Value("${stub.validators.enabled:true}")
+    private boolean validatorsEnabled;
+
+    // Injected latency: base + per concurrent request + random jitter, adjustable at runtime
+    @Value("${stub.latency.base-ms:0}")
+    private volatile long latencyBaseMillis;
+
+    @Value("${stub.latency.per-concurrent-ms:0}")
+    private volatile long latencyPerConcurrentMillis;
+
+    @Value("${stub.latency.jitter-ms:0}")
+    private volatile long latencyJitterMillis;
+
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+
+    public StubWarehouseController(@Value("${stub.seed-products:20}") int seedProducts)
+    {
+        for (int i = 0; i < seedProducts; i++)
+        {
+            Product product = new Product();
+            product.setName("Stub Thermo " + (i + 1));
+            product.setCategory_name("Thermocups");
+            product.setSku("T-" + (1000 + i));
+            product.setBase_price(new BigDecimal("19.99"));
+            product.setIs_active(true);
+            product.setPath_to_photo("/photos/stub" + (i + 1) + ".jpg");
+            product.setTotal_quantity(100);
+            product.setNum_reserved_goods(0);
+            saveProduct(product);
+
+            ThermocupAttributes attributes = new ThermocupAttributes();
+            attributes.setProduct_id(product.getId());
+            attributes.setVolume_ml(500);
+            attributes.setColor("Blue");
+            attributes.setBrand("StubBrand");
+            attributes.setModel("S" + (i + 1));
+            attributes.setIs_hermetic(true);
+            attributes.setMaterial("Steel");
+            thermocups.put(product.getId(), attributes);
+        }
+    }
+
+    /**
+     * Runs before every stub endpoint. Latency grows with the number of concurrent requests,
+     * which is what a saturated backend looks like to the bot's concurrency limiter.
+     */
+    @ModelAttribute
+    public void injectLatency()
+    {
+        int concurrent = concurrentRequests.incrementAndGet();
+        try
+        {
+            long delay = latencyBaseMillis + latencyPerConcurrentMillis * (concurrent - 1)
+                    + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+            if (delay > 0)
+            {
+                Thread.sleep(delay);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    @PostMapping("/stub/latency")
+    public Map<String, Long> setLatency(@RequestParam(required = false) Long baseMs,
+                                        @RequestParam(required = false) Long perConcurrentMs,
+                                        @RequestParam(required = false) Long jitterMs)
+    {
+        if (baseMs != null) latencyBaseMillis = baseMs;
+        if (perConcurrentMs != null) latencyPerConcurrentMillis = perConcurrentMs;
+        if (jitterMs != null) latencyJitterMillis = jitterMs;
+        log.info("Stub: latency base={}ms perConcurrent={}ms jitter={}ms",
+                latencyBaseMillis, latencyPerConcurrentMillis, latencyJitterMillis);
+        return Map.of("baseMs", latencyBaseMillis, "perConcurrentMs", latencyPerConcurrentMillis,
+                "jitterMs", latencyJitterMillis);
+    }
+
+    @GetMapping("/products")
+    public List<Product> getProducts(WebRequest request)
+    {
+        if (notModified(request))
+        {
+            return null;
+        }
+        return new ArrayList<>(products.values());
+    }
+
+    @GetMapping("/products/{id}")
+    public ResponseEntity<Product> getProduct(@PathVariable Integer id, WebRequest request)
+    {
+        Product product = products.get(id);
+        if (product == null)
+        {
+            return ResponseEntity.notFound().build();
+        }
+        if (notModified(request))
+        {
+            return null;
+        }
+        return ResponseEntity.ok(product);
+    }
+
+    @GetMapping("/products/thermocups/{id}")
+    public ResponseEntity<ThermocupAttributes> getThermocup(@PathVariable Integer id)
+    {
+        ThermocupAttributes attributes = thermocups.get(id);
+        return attributes != null ? ResponseEntity.ok(attributes) : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/products")
+    public Product createProduct(@RequestBody Product product)
+    {
+        if (product.getTotal_quantity() == null) product.setTotal_quantity(0);
+        if (product.getNum_reserved_goods() == null) product.setNum_reserved_goods(0);
+        return saveProduct(product);
+    }
+
+    @PostMapping("/products/thermocups/create")
+    public String createThermocup(@RequestBody ThermocupAttributes attributes)
+    {
+        thermocups.put(attributes.getProduct_id(), attributes);
+        return "{\"status\":\"ok\"}";
+    }
+
+    @PatchMapping("/products/thermocups/update/{id}/stock")
+    public ResponseEntity<String> updateStock(@PathVariable Integer id, @RequestBody Map<String, Integer> body,
+                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey)
+    {
+        return idempotent(idempotencyKey, () -> applyStock(id, body));
+    }
+
+    private ResponseEntity<String> applyStock(Integer id, Map<String, Integer> body)
+    {
+        Product product = products.get(id);
+        if (product == null)
+        {
+            return ResponseEntity.notFound().build();
+        }
+        synchronized (product)
+        {
+            product.setTotal_quantity(product.getTotal_quantity() + body.getOrDefault("quantity_change", 0));
+        }
+        touch();
+        return ResponseEntity.ok("{\"status\":\"ok\"}");
+    }
+
+    @PatchMapping("/products/thermocups/update/{id}/reserved")
+    public ResponseEntity<String> updateReserved(@PathVariable Integer id, @RequestBody Map<String, Integer> body,
+                                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey)
+    {
+        return idempotent(idempotencyKey, () -> applyReserved(id, body));
+    }
+
+    private ResponseEntity<String> applyReserved(Integer id, Map<String, Integer> body)
+    {
+        Product product = products.get(id);
+        if (product == null)
+        {
+            return ResponseEntity.notFound().build();
+        }
+        synchronized (product)
+        {
+            int reserved = product.getNum_reserved_goods() + body.getOrDefault("quantity_change", 0);
+            if (reserved < 0 || reserved > product.getTotal_quantity())
+            {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("{\"detail\":\"not enough stock\"}");
+            }
+            product.setNum_reserved_goods(reserved);
+        }
+        touch();
+        return ResponseEntity.ok("{\"status\":\"ok\"}");
+    }
+
+    /**
+     * Replays the stored response for a key that was already applied instead of applying it again
+     */
+    private ResponseEntity<String> idempotent(String idempotencyKey, Supplier<ResponseEntity<String>> write)
+    {
+        if (idempotencyKey == null)
+        {
+            return write.get();
+        }
+        synchronized (appliedKeys)
+        {
+            ResponseEntity<String> previous = appliedKeys.get(idempotencyKey);
+            if (previous != null)
+            {
+                log.info("Stub: replaying response for idempotency key {}", idempotencyKey);
+                return previous;
+            }
+            ResponseEntity<String> response = write.get();
+            appliedKeys.put(idempotencyKey, response);
+            return response;
+        }
+    }
+
+    private Product saveProduct(Product product)
+    {
+        product.setId(nextId.getAndIncrement());
+        product.setCreated_at(LocalDateTime.now());
+        product.setUpdated_at(product.getCreated_at());
+        products.put(product.getId(), product);
+        touch();
+        return product;
+    }
+
+    private void touch()
+    {
+        version.incrementAndGet();
+        lastModified = System.currentTimeMillis();
+    }
+
+    /**
+     * Sets ETag / Last-Modified on the response and returns true when the client's copy is current
+     */
+    private boolean notModified(WebRequest request)
+    {
+        return validatorsEnabled && request.checkNotModified("\"v" + version.get() + "\"", lastModified);
+    }
+}
@@ -1,10 +1,18 @@
 package com.warehouse.bot.controller;
 
+import com.warehouse.bot.service.RetryExecutor;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class WarehouseController
 {
@@ -12,7 +20,32 @@ public class WarehouseController
     @Bean
     public RestTemplate restTemplate()
     {
-        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(50)
+                .setMaxConnPerRoute(20)
+                .build();
+
+        // Content compression is on by default: the client sends Accept-Encoding: gzip, deflate
+        // and transparently inflates the body, so large /products responses travel compressed
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient)
+        {
+            // Built per request: an attempt made by RetryExecutor waits no longer than its deadline allows
+            @Override
+            protected RequestConfig createRequestConfig(Object client)
+            {
+                RequestConfig config = super.createRequestConfig(client);
+                Long timeoutMillis = RetryExecutor.attemptTimeoutMillis();
+                if (config == null || timeoutMillis == null)
+                {
+                    return config;
+                }
+                return RequestConfig.copy(config).setResponseTimeout(timeoutMillis, TimeUnit.MILLISECONDS).build();
+            }
+        };
         
         // Correct timeout configuration for httpclient5
         requestFactory.setConnectTimeout(5000); // 5 seconds connection timeout
@@ -20,4 +53,4 @@ public class WarehouseController
         
         return new RestTemplate(requestFactory);
     }
-}
\ No newline at end of file
+}
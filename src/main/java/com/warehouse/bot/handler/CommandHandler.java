@@ -1,79 +1,281 @@
 // handler/CommandHandler.java
 package com.warehouse.bot.handler;
 
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.BotResponse;
+import com.warehouse.bot.model.ChatSession;
+import com.warehouse.bot.model.ExportRequest;
 import com.warehouse.bot.model.Product;
 import com.warehouse.bot.model.ProductWithAttributes;
-import com.warehouse.bot.model.ServerAttributes;
-import com.warehouse.bot.model.ThermocupAttributes;
+import com.warehouse.bot.service.CategoryRegistry;
+import com.warehouse.bot.service.LowStockAlerts;
+import com.warehouse.bot.service.ProductCategory;
+import com.warehouse.bot.service.ProductWatches;
+import com.warehouse.bot.service.SharedStateBackend;
+import com.warehouse.bot.service.StockWriteCoalescer;
+import com.warehouse.bot.service.ThermocupCategory;
+import com.warehouse.bot.service.ThermocupImportService;
+import com.warehouse.bot.service.UpdateDispatcher;
+import com.warehouse.bot.service.WarehouseDirectory;
+import com.warehouse.bot.service.WarehouseStockMatrix;
 import com.warehouse.bot.service.WarehouseApiService;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class CommandHandler
 {
 
+    private static final String AWAITING_PRODUCT_ID = "AWAITING_PRODUCT_ID";
     private static final String AWAITING_STOCK_PRODUCT_ID = "AWAITING_STOCK_PRODUCT_ID";
     private static final String AWAITING_STOCK_WAREHOUSE_ID = "AWAITING_STOCK_WAREHOUSE_ID";
     private static final String AWAITING_STOCK_QUANTITY = "AWAITING_STOCK_QUANTITY";
     private static final String AWAITING_RESERVED_PRODUCT_ID = "AWAITING_RESERVED_PRODUCT_ID";
     private static final String AWAITING_RESERVED_QUANTITY = "AWAITING_RESERVED_QUANTITY";
-
-    private Map<Long, Long> reservedProductIdCache = new HashMap<>();
+    private static final String AWAITING_IMPORT_DOCUMENT = "AWAITING_IMPORT_DOCUMENT";
 
     private final WarehouseApiService warehouseApiService;
-    private Map<Long, String> userStates = new HashMap<>();
-
-    // Pagination state
-    private Map<Long, Integer> userPageStates = new HashMap<>(); // chatId -> current page
-    private Map<Long, List<Product>> userProductCache = new HashMap<>(); // chatId -> cached products
-
-    private Map<Long, Long> stockProductIdCache = new HashMap<>(); // chatId -> productId
-    private Map<Long, Integer> stockWarehouseIdCache = new HashMap<>(); // chatId -> warehouseId
+    // Sessions of chats with an update in progress; loaded from and saved to the state backend per update
+    private final Map<Long, ChatSession> sessions = new ConcurrentHashMap<>();
+
+    private final BotConfig botConfig;
+    private final StockWriteCoalescer stockWriteCoalescer;
+    private final SharedStateBackend stateBackend;
+    private final LowStockAlerts lowStockAlerts;
+    private final ProductWatches productWatches;
+    private final WarehouseDirectory warehouseDirectory;
+    private final WarehouseStockMatrix stockMatrix;
+    private final CategoryRegistry categoryRegistry;
+    private final ThermocupCategory thermocupCategory;
 
     // Constants
     private static final int PRODUCTS_PER_PAGE = 5;
-
-    public CommandHandler(WarehouseApiService warehouseApiService)
+    private static final int MAX_CAPTION_LENGTH = 1024;
+    // Inline pagination callback: "pg:<page>:<catalog version hex>"
+    private static final String PAGE_CALLBACK_PREFIX = "pg:";
+
+    public CommandHandler(WarehouseApiService warehouseApiService, BotConfig botConfig,
+                          StockWriteCoalescer stockWriteCoalescer,
+                          SharedStateBackend stateBackend, LowStockAlerts lowStockAlerts,
+                          ProductWatches productWatches,
+                          WarehouseDirectory warehouseDirectory, WarehouseStockMatrix stockMatrix,
+                          CategoryRegistry categoryRegistry, ThermocupCategory thermocupCategory)
     {
         this.warehouseApiService = warehouseApiService;
+        this.botConfig = botConfig;
+        this.stockWriteCoalescer = stockWriteCoalescer;
+        this.stateBackend = stateBackend;
+        this.lowStockAlerts = lowStockAlerts;
+        this.productWatches = productWatches;
+        this.warehouseDirectory = warehouseDirectory;
+        this.stockMatrix = stockMatrix;
+        this.categoryRegistry = categoryRegistry;
+        this.thermocupCategory = thermocupCategory;
+    }
+
+    /**
+     * Entry point for text messages. Product lookups are rendered as photos in photo mode,
+     * everything else is a text reply from handleCommand.
+     */
+    public BotResponse handleMessage(String message, Long chatId)
+    {
+        try
+        {
+            return routeMessage(message, chatId);
+        }
+        finally
+        {
+            persistSession(chatId);
+        }
+    }
+
+    private BotResponse routeMessage(String message, Long chatId)
+    {
+        if (botConfig.isPhotoMode() && AWAITING_PRODUCT_ID.equals(getUserState(chatId)))
+        {
+            session(chatId).setState(null);
+            return showProductWithPhoto(message, chatId);
+        }
+        if (getUserState(chatId) == null)
+        {
+            switch (message)
+            {
+                case "All products":
+                    return getAllProducts();
+
+                case "Export catalog (CSV)":
+                    return BotResponse.export("⏳ Preparing catalog export...", new ExportRequest(false, false));
+
+                case "Export catalog with attributes (CSV.gz)":
+                    return BotResponse.export("⏳ Preparing catalog export with attributes...",
+                            new ExportRequest(true, true));
+
+                default:
+                    break;
+            }
+        }
+        return BotResponse.text(handleCommand(message, chatId));
+    }
+
+    /**
+     * Scheduling priority of a text message from its text alone: commands that start a write flow go
+     * first, catalog browsing and lookups go last and are shed first under overload. Flow steps
+     * (free text) are NORMAL here and are never shed.
+     */
+    public UpdateDispatcher.Priority classify(String message)
+    {
+        switch (message)
+        {
+            case "All products":
+            case "Products by ID":
+            case "Search by filter":
+            case "Export catalog (CSV)":
+            case "Export catalog with attributes (CSV.gz)":
+                return UpdateDispatcher.Priority.LOW;
+
+            case "Add new Thermal mug":
+            case "Import thermal mugs from file":
+            case "Update thermal mug by ID":
+            case "Update quantity of reserved product":
+            case "Update product quantity in stock":
+                return UpdateDispatcher.Priority.HIGH;
+
+            default:
+                return UpdateDispatcher.Priority.NORMAL;
+        }
+    }
+
+    /**
+     * Priority once the chat's earlier updates have run on the owning instance, so its flow state is
+     * current: steps of a write flow go first, steps of a lookup go last
+     */
+    public UpdateDispatcher.Priority rerank(String message, Long chatId)
+    {
+        String state = getUserState(chatId);
+        if (state != null)
+        {
+            return AWAITING_PRODUCT_ID.equals(state) || "AWAITING_FILTER_PARAMETERS".equals(state)
+                    ? UpdateDispatcher.Priority.LOW
+                    : UpdateDispatcher.Priority.HIGH;
+        }
+        return classify(message);
+    }
+
+    /**
+     * Inline keyboard presses. Pagination is stateless: the page and the catalog version
+     * travel in callback_data and the returned page replaces the original message.
+     */
+    public BotResponse handleCallback(String data, Long chatId)
+    {
+        if (data == null || !data.startsWith(PAGE_CALLBACK_PREFIX))
+        {
+            BotResponse response = new BotResponse();
+            response.setNotice("Unknown action");
+            return response;
+        }
+
+        try
+        {
+            String[] parts = data.substring(PAGE_CALLBACK_PREFIX.length()).split(":");
+            int page = Integer.parseInt(parts[0]);
+            int version = Integer.parseUnsignedInt(parts[1], 16);
+
+            List<Product> products = warehouseApiService.getProducts(new HashMap<>());
+            if (products.isEmpty())
+            {
+                return BotResponse.text("No products found.");
+            }
+
+            BotResponse response = createProductsPage(products, page);
+            if (version != warehouseApiService.getCatalogVersion())
+            {
+                response.setNotice("🔄 Catalog has changed, showing the latest data");
+            }
+            return response;
+        }
+        catch (RuntimeException e)
+        {
+            log.error("Error handling callback '{}': {}", data, e.getMessage());
+            BotResponse response = new BotResponse();
+            response.setNotice("❌ Error retrieving products. Please try again.");
+            return response;
+        }
+    }
+
+    private BotResponse showProductWithPhoto(String message, Long chatId)
+    {
+        try
+        {
+            Long productId = Long.parseLong(message.trim());
+            ProductWithAttributes<?> productWithAttrs = warehouseApiService.getProductWithAttributes(productId);
+            if (productWithAttrs == null)
+            {
+                return BotResponse.text("Product not found!");
+            }
+
+            String caption = formatProduct(productWithAttrs);
+            String photoPath = productWithAttrs.getProduct().getPath_to_photo();
+            if (photoPath == null || photoPath.isBlank())
+            {
+                return BotResponse.text(caption);
+            }
+            if (caption.length() > MAX_CAPTION_LENGTH)
+            {
+                caption = caption.substring(0, MAX_CAPTION_LENGTH - 1) + "…";
+            }
+            return BotResponse.photo(photoPath, caption);
+        }
+        catch (NumberFormatException e)
+        {
+            return BotResponse.text("Invalid number format. Please try again with valid numbers.");
+        }
     }
 
     public String handleCommand(String message, Long chatId)
     {
         try
         {
-            if (userStates.containsKey(chatId))
+            if (getUserState(chatId) != null)
             {
                 return handleState(message, chatId);
             }
-
-            // Handle pagination commands
-            if (message.equals("➡️ Next page") || message.equals("⬅️ Previous page"))
+            if (message.equals("/warehouses"))
+            {
+                return getWarehousesOverview();
+            }
+            if (message.startsWith("/stock"))
+            {
+                return getStockBreakdown(message.substring("/stock".length()).trim());
+            }
+            if (message.startsWith("/watch") || message.startsWith("/unwatch"))
             {
-                return handlePagination(message, chatId);
+                return handleWatchCommand(message.trim(), chatId);
             }
 
             switch (message)
             {
                 case "/start":
-                    // Clear any existing pagination state
-                    userPageStates.remove(chatId);
-                    userProductCache.remove(chatId);
                     return getWelcomeMessage();
                     
                 case "🔙 Back to Main Menu":
@@ -82,45 +284,53 @@ public class CommandHandler
                 case "📦 Get products":
                     return getProductsMenu();
 
-                case "All products":
-                    return getAllProducts(chatId);
-
                 case "Products by ID":
-                    userStates.put(chatId, "AWAITING_PRODUCT_ID");
+                    session(chatId).setState(AWAITING_PRODUCT_ID);
                     return "Please enter the product ID:";
                 
                 case "Search by filter":
-                    userStates.put(chatId, "AWAITING_FILTER_PARAMETERS");
+                    session(chatId).setState("AWAITING_FILTER_PARAMETERS");
                     return "Please choose params:";
                 
+                case "/lowstock":
+                    return lowStockAlerts.toggle(chatId)
+                            ? String.format("🔔 Low-stock alerts enabled: you will be notified when a product's " +
+                                    "available quantity drops to %d. Send /lowstock again to turn them off.",
+                                    botConfig.getLowStockThreshold())
+                            : "🔕 Low-stock alerts disabled.";
+
                 case "Add new products":
                     return getAddProductsMenu();
                 
                 case "Add new Thermal mug":
-                    userStates.put(chatId, "AWAITING_THERMOCUP_CREATE");
+                    session(chatId).setState("AWAITING_THERMOCUP_CREATE");
                     return getThermocupCreateInstructions();
                 
+                case "Import thermal mugs from file":
+                    session(chatId).setState(AWAITING_IMPORT_DOCUMENT);
+                    return getThermocupImportInstructions();
+                
                 case "Update products":
                     return getUpdateProductsMenu();
                 
                 case "Update thermal mug by ID":
-                    userStates.put(chatId, "AWAITING_THERMOCUP_UPDATE");
+                    session(chatId).setState("AWAITING_THERMOCUP_UPDATE");
                     return "Please enter thermocup ID and update data in format:\n" +
                            "ID|name|category_id|base_price|SKU|is_active|path_to_photo|volume_ml|color|brand|model|is_hermetic|material\n" +
                            "Example: 123|New Name|1|29.99|SKU123|true|/photos/1.jpg|500|Red|BrandX|ModelY|true|Stainless Steel";
 
                 case "Update quantity of reserved product":
-                    reservedProductIdCache.remove(chatId);
+                    session(chatId).setReservedProductId(null);
                     
-                    userStates.put(chatId, AWAITING_RESERVED_PRODUCT_ID);
+                    session(chatId).setState(AWAITING_RESERVED_PRODUCT_ID);
                     return "📦 Update Reserved Quantity\n\n" +
                         "Please enter the Product ID:";
 
                 case "Update product quantity in stock":
-                    stockProductIdCache.remove(chatId);
-                    stockWarehouseIdCache.remove(chatId);
+                    session(chatId).setStockProductId(null);
+                    session(chatId).setStockWarehouseId(null);
 
-                    userStates.put(chatId, AWAITING_STOCK_PRODUCT_ID);
+                    session(chatId).setState(AWAITING_STOCK_PRODUCT_ID);
                     return "📦 Update Product Stock Quantity\n\n" +
                         "Please enter the Product ID:";
                 
@@ -135,47 +345,16 @@ public class CommandHandler
         }
     }
 
-    private String handlePagination(String command, Long chatId)
-    {
-        Integer currentPage = userPageStates.get(chatId);
-        List<Product> products = userProductCache.get(chatId);
-        
-        if (currentPage == null || products == null)
-        {
-            return "❌ No products session found. Please select 'All products' again.";
-        }
-        
-        int newPage = currentPage;
-        
-        if (command.equals("➡️ Next page"))
-        {
-            newPage++;
-        } else if (command.equals("⬅️ Previous page"))
-        {
-            newPage--;
-        }
-        
-        // Validate new page number
-        int totalPages = (int) Math.ceil((double) products.size() / PRODUCTS_PER_PAGE);
-        if (newPage < 0) newPage = 0;
-        if (newPage >= totalPages) newPage = totalPages - 1;
-        
-        // Update page state
-        userPageStates.put(chatId, newPage);
-        
-        return formatProductsPage(chatId, newPage);
-    }
-
     private String handleState(String message, Long chatId)
     {
-        String state = userStates.get(chatId);
-        userStates.remove(chatId);
+        String state = getUserState(chatId);
+        session(chatId).setState(null);
 
         try
         {
             switch (state)
             {
-                case "AWAITING_PRODUCT_ID":
+                case AWAITING_PRODUCT_ID:
                     Long productId = Long.parseLong(message.trim());
                     ProductWithAttributes<?> productWithAttrs = warehouseApiService.getProductWithAttributes(productId);
                     return productWithAttrs != null ? formatProduct(productWithAttrs) : "Product not found!";
@@ -212,6 +391,14 @@ public class CommandHandler
                     
                 case AWAITING_RESERVED_QUANTITY:
                     return handleReservedQuantity(message, chatId);
+
+                case AWAITING_IMPORT_DOCUMENT:
+                    if (message.equals("❌ Cancel") || message.equals("🔙 Back to Main Menu"))
+                    {
+                        return getWelcomeMessage();
+                    }
+                    session(chatId).setState(AWAITING_IMPORT_DOCUMENT);
+                    return "📎 Please send the .csv or .xlsx file as a document.";
                 
                 default:
                     return "Invalid state. Please start over.";
@@ -228,13 +415,109 @@ public class CommandHandler
         }
     }
 
+    /**
+     * /watch ID, /unwatch ID and /watches (list of watched products)
+     */
+    private String handleWatchCommand(String message, Long chatId)
+    {
+        String[] parts = message.split("\\s+");
+        if (parts[0].equals("/watches"))
+        {
+            Set<Long> watched = productWatches.watchedBy(chatId);
+            return watched.isEmpty()
+                    ? "You are not watching any products. Use /watch <product id>."
+                    : "👀 Watched products: " + watched.stream().map(String::valueOf).collect(Collectors.joining(", "));
+        }
+        if (parts.length != 2 || !(parts[0].equals("/watch") || parts[0].equals("/unwatch")))
+        {
+            return "Usage: /watch <product id>, /unwatch <product id> or /watches";
+        }
+        try
+        {
+            long productId = Long.parseLong(parts[1]);
+            return parts[0].equals("/watch")
+                    ? productWatches.watch(chatId, productId)
+                    : productWatches.unwatch(chatId, productId);
+        }
+        catch (NumberFormatException e)
+        {
+            return "Invalid product ID. Usage: /watch <product id>";
+        }
+    }
+
+    /**
+     * /stock ID: total quantity of a product and how the stock written through the bot splits by warehouse
+     */
+    private String getStockBreakdown(String argument)
+    {
+        long productId;
+        try
+        {
+            productId = Long.parseLong(argument);
+        }
+        catch (NumberFormatException e)
+        {
+            return "Usage: /stock <product id>";
+        }
+
+        Product product = warehouseApiService.getProductById(productId);
+        if (product == null)
+        {
+            return "Product not found!";
+        }
+        int total = product.getTotal_quantity() != null ? product.getTotal_quantity() : 0;
+        Map<Integer, Integer> breakdown = stockMatrix.breakdown(productId);
+
+        StringBuilder text = new StringBuilder();
+        text.append("📦 ").append(product.getName()).append(" (ID ").append(productId).append(")\n");
+        text.append("🏠 Total quantity: ").append(total).append("\n\n");
+        if (breakdown.isEmpty())
+        {
+            text.append("No stock changes by warehouse recorded through the bot yet.");
+            return text.toString();
+        }
+        text.append("🏭 Stock changes by warehouse:\n");
+        int attributed = 0;
+        for (Map.Entry<Integer, Integer> cell : breakdown.entrySet())
+        {
+            text.append(String.format("• %d - %s: %+d\n", cell.getKey(),
+                    warehouseDirectory.nameOf(cell.getKey()), cell.getValue()));
+            attributed += cell.getValue();
+        }
+        text.append(String.format("❔ Not attributed to a warehouse: %d", total - attributed));
+        return text.toString();
+    }
+
+    /**
+     * /warehouses: the warehouse directory with the net stock written through the bot per warehouse
+     */
+    private String getWarehousesOverview()
+    {
+        Map<Integer, Long> totals = stockMatrix.warehouseTotals();
+        if (warehouseDirectory.getWarehouses().isEmpty() && totals.isEmpty())
+        {
+            return "No warehouses configured.";
+        }
+        Map<Integer, String> names = new TreeMap<>(warehouseDirectory.getWarehouses());
+        totals.keySet().forEach(warehouseId -> names.putIfAbsent(warehouseId, warehouseDirectory.nameOf(warehouseId)));
+
+        StringBuilder text = new StringBuilder("🏭 Warehouses:\n\n");
+        names.forEach((warehouseId, name) -> text.append(String.format("• %d - %s: %+d\n",
+                warehouseId, name, totals.getOrDefault(warehouseId, 0L))));
+        text.append("\nNumbers are net stock changes made through the bot.");
+        return text.toString();
+    }
+
     private String getWelcomeMessage()
     {
         return "🏭 Welcome to Warehouse Bot! 🏭\n\n" +
                "Please choose an option from the menu:\n\n" +
                "📦 Get products\n" +
                "➕ Add new products\n" +
-               "✏️ Update products";
+               "✏️ Update products\n\n" +
+               "🔔 /lowstock - toggle low-stock alerts\n" +
+               "👀 /watch <id>, /unwatch <id>, /watches - product change notifications\n" +
+               "🏭 /stock <id>, /warehouses - stock by warehouse";
     }
 
     private String getProductsMenu()
@@ -242,12 +525,15 @@ public class CommandHandler
         return "📦 Get Products Menu:\n\n" +
                "• All products\n" +
                "• Products by ID\n" +
-               "• Search by filter";
+               "• Search by filter\n" +
+               "• Export catalog (CSV)\n" +
+               "• Export catalog with attributes (CSV.gz)";
     }
 
     private String getAddProductsMenu() {
         return "➕ Add New Products:\n\n" +
-               "• Add new Thermal mug";
+               "• Add new Thermal mug\n" +
+               "• Import thermal mugs from file";
     }
 
     private String getUpdateProductsMenu() {
@@ -257,59 +543,46 @@ public class CommandHandler
                "• Update product quantity in stock";
     }
 
-    private String getAllProducts(Long chatId)
+    private BotResponse getAllProducts()
     {
         try
         {
             List<Product> products = warehouseApiService.getProducts(new HashMap<>());
             if (products.isEmpty())
             {
-                return "No products found.";
+                return BotResponse.text("No products found.");
             }
 
-            // Cache products and reset page for this user
-            userProductCache.put(chatId, products);
-            userPageStates.put(chatId, 0); // Start at page 0
-
-            return formatProductsPage(chatId, 0);
-            
+            return createProductsPage(products, 0);
         }
         catch (Exception e)
         {
             log.error("Error getting all products: {}", e.getMessage());
-            return "❌ Error retrieving products. Please try again.";
-        }
-        //     StringBuilder sb = new StringBuilder("📦 All Products:\n\n");
-        // for (int i = 0; i < Math.min(products.size(), 10); i++) {
-        //     Product product = products.get(i);
-        //     sb.append(formatProduct(product)).append("\n\n");
-        // }
-        // System.out.println(String.format("Size: %d", products.size()));
-        
-        // if (products.size() > 10) {
-        //     sb.append("... and ").append(products.size() - 10).append(" more products");
-        // }
+            return BotResponse.text("❌ Error retrieving products. Please try again.");
+        }
+    }
+
+    private BotResponse createProductsPage(List<Product> products, int page)
+    {
+        int totalPages = (int) Math.ceil((double) products.size() / PRODUCTS_PER_PAGE);
         
-        // return sb.toString();
+        // Validate page number
+        if (page < 0) page = 0;
+        if (page >= totalPages) page = totalPages - 1;
+
+        return BotResponse.withInlineKeyboard(
+                formatProductsPage(products, page),
+                createPaginationKeyboard(page, totalPages, warehouseApiService.getCatalogVersion()));
     }
 
     /**
      * Format products for a specific page
      */
-    private String formatProductsPage(Long chatId, int page)
+    private String formatProductsPage(List<Product> products, int page)
     {
-        List<Product> products = userProductCache.get(chatId);
-        if (products == null || products.isEmpty()) {
-            return "No products available.";
-        }
-        
         int totalProducts = products.size();
         int totalPages = (int) Math.ceil((double) totalProducts / PRODUCTS_PER_PAGE);
         
-        // Validate page number
-        if (page < 0) page = 0;
-        if (page >= totalPages) page = totalPages - 1;
-        
         // Calculate start and end indices
         int startIndex = page * PRODUCTS_PER_PAGE;
         int endIndex = Math.min(startIndex + PRODUCTS_PER_PAGE, totalProducts);
@@ -333,6 +606,38 @@ public class CommandHandler
         return sb.toString();
     }
 
+    /**
+     * Inline Previous/Next buttons; each carries the target page and the catalog version it was rendered from
+     */
+    private InlineKeyboardMarkup createPaginationKeyboard(int page, int totalPages, int catalogVersion)
+    {
+        String version = Integer.toHexString(catalogVersion);
+        List<InlineKeyboardButton> row = new ArrayList<>();
+        
+        if (page > 0)
+        {
+            row.add(createCallbackButton("⬅️ Previous page", PAGE_CALLBACK_PREFIX + (page - 1) + ":" + version));
+        }
+        row.add(createCallbackButton(String.format("📄 %d/%d", page + 1, totalPages),
+                PAGE_CALLBACK_PREFIX + page + ":" + version));
+        if (page < totalPages - 1)
+        {
+            row.add(createCallbackButton("➡️ Next page", PAGE_CALLBACK_PREFIX + (page + 1) + ":" + version));
+        }
+        
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(List.of(row));
+        return keyboardMarkup;
+    }
+
+    private InlineKeyboardButton createCallbackButton(String text, String callbackData)
+    {
+        InlineKeyboardButton button = new InlineKeyboardButton();
+        button.setText(text);
+        button.setCallbackData(callbackData);
+        return button;
+    }
+
     // private ReplyKeyboard getMainMenuKeyboard()
     // {
     //     // Create the keyboard object
@@ -458,8 +763,12 @@ public class CommandHandler
             Long productId = Long.parseLong(parts[0].trim());
             Integer warehouseId = Integer.parseInt(parts[1].trim());
             Integer quantityChange = Integer.parseInt(parts[2].trim());
+            if (!warehouseDirectory.isKnown(warehouseId))
+            {
+                return "❌ Unknown Warehouse ID: " + warehouseId + ". Known warehouses:" + warehouseHint();
+            }
             
-            log.info("🔄 Processing stock update - Product: {}, Warehouse: {}, Change: {}", 
+            log.debug("🔄 Processing stock update - Product: {}, Warehouse: {}, Change: {}", 
                     productId, warehouseId, quantityChange);
             
             // Validate quantity change is not zero
@@ -495,11 +804,11 @@ public class CommandHandler
             }
             
             // Store product ID and move to next step
-            stockProductIdCache.put(chatId, productId);
-            userStates.put(chatId, AWAITING_STOCK_WAREHOUSE_ID);
+            session(chatId).setStockProductId(productId);
+            session(chatId).setState(AWAITING_STOCK_WAREHOUSE_ID);
             
             return "✅ Product found: " + product.getName() + "\n\n" +
-                "Please enter the Warehouse ID:";
+                "Please enter the Warehouse ID:" + warehouseHint();
             
         }
         catch (NumberFormatException e)
@@ -508,6 +817,11 @@ public class CommandHandler
         }
     }
 
+    private String warehouseHint()
+    {
+        return warehouseDirectory.getWarehouses().isEmpty() ? "" : "\n" + warehouseDirectory.describe();
+    }
+
     /**
      * Step 2: Handle Warehouse ID input
      */
@@ -515,10 +829,15 @@ public class CommandHandler
     {
         try {
             Integer warehouseId = Integer.parseInt(message.trim());
+            if (!warehouseDirectory.isKnown(warehouseId))
+            {
+                session(chatId).setState(AWAITING_STOCK_WAREHOUSE_ID);
+                return "❌ Unknown Warehouse ID: " + warehouseId + ". Please enter one of:" + warehouseHint();
+            }
             
             // Store warehouse ID and move to next step
-            stockWarehouseIdCache.put(chatId, warehouseId);
-            userStates.put(chatId, AWAITING_STOCK_QUANTITY);
+            session(chatId).setStockWarehouseId(warehouseId);
+            session(chatId).setState(AWAITING_STOCK_QUANTITY);
             
             return "✅ Warehouse ID: " + warehouseId + "\n\n" +
                 "Please enter the Quantity Change:\n" +
@@ -539,8 +858,8 @@ public class CommandHandler
             Integer quantityChange = Integer.parseInt(message.trim());
             
             // Get stored values
-            Long productId = stockProductIdCache.get(chatId);
-            Integer warehouseId = stockWarehouseIdCache.get(chatId);
+            Long productId = session(chatId).getStockProductId();
+            Integer warehouseId = session(chatId).getStockWarehouseId();
             
             if (productId == null || warehouseId == null) {
                 clearStockStates(chatId);
@@ -553,10 +872,12 @@ public class CommandHandler
             }
             
             // Perform the stock update
-            log.info("🔄 Updating stock - Product: {}, Warehouse: {}, Change: {}", 
+            log.debug("🔄 Updating stock - Product: {}, Warehouse: {}, Change: {}", 
                     productId, warehouseId, quantityChange);
             
-            String result = warehouseApiService.updateStockQuantity(productId, warehouseId, quantityChange);
+            String result = stockWriteCoalescer.isEnabled()
+                    ? stockWriteCoalescer.submitStock(chatId, productId, warehouseId, quantityChange)
+                    : warehouseApiService.updateStockQuantity(productId, warehouseId, quantityChange);
             
             // Clear all stock states after completion
             clearStockStates(chatId);
@@ -580,8 +901,8 @@ public class CommandHandler
             }
             
             // Store product ID and move to next step
-            reservedProductIdCache.put(chatId, productId);
-            userStates.put(chatId, AWAITING_RESERVED_QUANTITY);
+            session(chatId).setReservedProductId(productId);
+            session(chatId).setState(AWAITING_RESERVED_QUANTITY);
             
             return "✅ Product found: " + product.getName() + "\n\n" +
                 "Please enter the Quantity Change:\n" +
@@ -601,7 +922,7 @@ public class CommandHandler
             Integer quantityChange = Integer.parseInt(message.trim());
             
             // Get stored product ID
-            Long productId = reservedProductIdCache.get(chatId);
+            Long productId = session(chatId).getReservedProductId();
             
             if (productId == null) {
                 clearReservedStates(chatId);
@@ -614,10 +935,13 @@ public class CommandHandler
             }
             
             // Perform the reserved quantity update
-            log.info("🔄 Updating reserved quantity - Product: {}, Change: {}", 
+            log.debug("🔄 Updating reserved quantity - Product: {}, Change: {}", 
                     productId, quantityChange);
             
-            String result = warehouseApiService.updateReservedQuantity(productId, quantityChange);
+            // Both paths check the local ledger first; obvious over-reservations never reach the backend
+            String result = stockWriteCoalescer.isEnabled()
+                    ? stockWriteCoalescer.submitReserved(chatId, productId, quantityChange)
+                    : warehouseApiService.updateReservedQuantity(productId, quantityChange);
             
             // Clear all reserved states after completion
             clearReservedStates(chatId);
@@ -633,8 +957,8 @@ public class CommandHandler
      * Clear all reserved-related states
      */
     private void clearReservedStates(Long chatId) {
-        userStates.remove(chatId);
-        reservedProductIdCache.remove(chatId);
+        session(chatId).setState(null);
+        session(chatId).setReservedProductId(null);
     }
 
     /**
@@ -642,14 +966,54 @@ public class CommandHandler
      */
     private void clearStockStates(Long chatId)
     {
-        userStates.remove(chatId);
-        stockProductIdCache.remove(chatId);
-        stockWarehouseIdCache.remove(chatId);
+        session(chatId).setState(null);
+        session(chatId).setStockProductId(null);
+        session(chatId).setStockWarehouseId(null);
+    }
+
+    private ChatSession session(Long chatId)
+    {
+        return sessions.computeIfAbsent(chatId, id ->
+        {
+            ChatSession stored = stateBackend.loadSession(id);
+            return stored != null ? stored : new ChatSession();
+        });
+    }
+
+    /**
+     * Save the chat's session once its update is handled; finished flows are removed from the backend
+     */
+    private void persistSession(Long chatId)
+    {
+        ChatSession session = sessions.remove(chatId);
+        if (session != null)
+        {
+            stateBackend.saveSession(chatId, session);
+        }
     }
 
     public String getUserState(Long chatId)
     {
-        return userStates.get(chatId);
+        ChatSession session = sessions.get(chatId);
+        if (session == null)
+        {
+            session = stateBackend.loadSession(chatId);
+        }
+        return session != null ? session.getState() : null;
+    }
+
+    /**
+     * Returns true and leaves the import flow if the chat was waiting for an import document
+     */
+    public boolean acceptImportDocument(Long chatId)
+    {
+        if (!AWAITING_IMPORT_DOCUMENT.equals(getUserState(chatId)))
+        {
+            return false;
+        }
+        session(chatId).setState(null);
+        persistSession(chatId);
+        return true;
     }
 
     // private String updateThermocupFromInput(String input) {
@@ -704,6 +1068,14 @@ public class CommandHandler
         }
     }
 
+    private String getThermocupImportInstructions() {
+        return "📥 Import Thermal Mugs\n\n" +
+               "Send a .csv or .xlsx document, one thermal mug per row, with these columns:\n" +
+               String.join(",", ThermocupImportService.columns(thermocupCategory)) + "\n\n" +
+               "A header row with these names is optional; when present the columns may be in any order.\n" +
+               "All rows are validated before anything is created.";
+    }
+
     private String getThermocupCreateInstructions() {
         return "Please enter thermocup data in the following format:\n\n" +
                "name|category_id|base_price|starting_quantity|warehouse_id|path_to_photo|volume_ml|color|brand|model|is_hermetic|material\n\n" +
@@ -772,80 +1144,20 @@ public class CommandHandler
         // Add category-specific attributes
         sb.append("\n📋 Attributes:\n");
         
-        switch (product.getCategory_name())
-        {
-            case "Thermocups":
-                if (attributes instanceof ThermocupAttributes)
-                {
-                    sb.append(formatThermocupAttributes((ThermocupAttributes) attributes));
-                }
-                break;
-                
-            case "Servers":
-                if (attributes instanceof ServerAttributes)
-                {
-                    sb.append(formatServerAttributes((ServerAttributes) attributes));
-                }
-                break;
-                
-            default:
-                sb.append(product.getCategory_name());
-                break;
-        }
+        String rendered = categoryRegistry.render(product, attributes);
+        sb.append(rendered != null ? rendered : product.getCategory_name());
         
         return sb.toString();
     }
 
-    /**
-     * Format thermocup-specific attributes
-     */
-    private String formatThermocupAttributes(ThermocupAttributes thermocup)
-    {
-        return String.format(
-            "• Volume: %d ml\n• Color: %s\n• Brand: %s\n• Model: %s\n• Hermetic: %s\n• Material: %s",
-            thermocup.getVolume_ml(),
-            thermocup.getColor(),
-            thermocup.getBrand(),
-            thermocup.getModel(),
-            thermocup.getIs_hermetic() ? "Yes" : "No",
-            thermocup.getMaterial()
-        );
-    }
+    // In CommandHandler.java - replace the thermocup methods:
 
-    /**
-     * Format server-specific attributes
-     */
-    private String formatServerAttributes(ServerAttributes server)
+    private <T> String createProduct(Product product, ProductCategory<T> category, String[] fields)
     {
-        // Build storage info
-        String storageInfo = "";
-        if (server.getHdd_size_gb() != null && server.getSsd_size_gb() != null)
-        {
-            storageInfo = String.format("HDD: %d GB, SSD: %d GB", 
-                server.getHdd_size_gb(), server.getSsd_size_gb());
-        }
-        else if (server.getHdd_size_gb() != null)
-        {
-            storageInfo = String.format("HDD: %d GB", server.getHdd_size_gb());
-        }
-        else if (server.getSsd_size_gb() != null)
-        {
-            storageInfo = String.format("SSD: %d GB", server.getSsd_size_gb());
-        }
-        
-        return String.format(
-            "• RAM: %d GB\n• CPU: %s (%d cores)\n• %s\n• Form Factor: %s\n• Manufacturer: %s",
-            server.getRam_gb(),
-            server.getCpu_model(),
-            server.getCpu_cores(),
-            storageInfo,
-            server.getForm_factor(),
-            server.getManufacturer()
-        );
+        T attributes = category.parse(fields);
+        return warehouseApiService.createProduct(product, category, attributes);
     }
 
-    // In CommandHandler.java - replace the thermocup methods:
-
     private String createThermocupFromInput(String input)
     {
         try
@@ -865,16 +1177,11 @@ public class CommandHandler
             product.setIs_active(Boolean.parseBoolean(parts[4]));
             product.setPath_to_photo(parts[5]);
 
-            // Create ThermocupAttributes
-            ThermocupAttributes attributes = new ThermocupAttributes();
-            attributes.setVolume_ml(Integer.parseInt(parts[6]));
-            attributes.setColor(parts[7]);
-            attributes.setBrand(parts[8]);
-            attributes.setModel(parts[9]);
-            attributes.setIs_hermetic(Boolean.parseBoolean(parts[10]));
-            attributes.setMaterial(parts[11]);
-
-            return warehouseApiService.createThermocup(product, attributes);
+            // Attribute fields follow in the order the category documents, e.g. for thermocups
+            // volume_ml|color|brand|model|is_hermetic|material
+            CategoryRegistry.Registration<?> registration = categoryRegistry.lookup(product);
+            ProductCategory<?> category = registration != null ? registration.category() : thermocupCategory;
+            return createProduct(product, category, Arrays.copyOfRange(parts, 6, parts.length));
         }
         catch (Exception e)
         {
@@ -882,43 +1189,4 @@ public class CommandHandler
         }
     }
 
-
-    private String formatProductWithAttributes(ProductWithAttributes<?> productWithAttributes)
-    {
-        Product product = productWithAttributes.getProduct();
-        StringBuilder sb = new StringBuilder();
-        
-        sb.append(String.format
-        (
-            "🆔 ID: %d\n📛 Name: %s\n🏷️ Category: %s\n💰 Price: $%.2f\n📦 Reserved: %d\n🔧 Active: %s\n",
-            product.getId(),
-            product.getName(),
-            product.getCategory_name(),
-            product.getBase_price(),
-            product.getNum_reserved_goods(),
-            product.getIs_active() ? "Yes" : "No"
-        ));
-        
-        // Add attributes based on category
-        Object attributes = productWithAttributes.getAttributes();
-        if (attributes instanceof ThermocupAttributes)
-        {
-            ThermocupAttributes thermocup = (ThermocupAttributes) attributes;
-            sb.append("\n🧴 Thermocup Attributes:\n")
-            .append(String.format("• Volume: %d ml\n• Color: %s\n• Brand: %s\n• Model: %s\n• Hermetic: %s\n• Material: %s",
-                    thermocup.getVolume_ml(), thermocup.getColor(), thermocup.getBrand(),
-                    thermocup.getModel(), thermocup.getIs_hermetic() ? "Yes" : "No", thermocup.getMaterial()));
-        }
-        else if (attributes instanceof ServerAttributes)
-        {
-            ServerAttributes server = (ServerAttributes) attributes;
-            sb.append("\n🖥️ Server Attributes:\n")
-            .append(String.format("• RAM: %d GB\n• CPU: %s (%d cores)\n• HDD: %d GB\n• SSD: %d GB\n• Form: %s\n• Manufacturer: %s",
-                    server.getRam_gb(), server.getCpu_model(), server.getCpu_cores(),
-                    server.getHdd_size_gb(), server.getSsd_size_gb(), server.getForm_factor(), server.getManufacturer()));
-        }
-        
-        return sb.toString();
-    }
-
 }
\ No newline at end of file
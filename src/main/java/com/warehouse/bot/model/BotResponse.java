@@ -0,0 +1,47 @@
+package com.warehouse.bot.model;
+
+import lombok.Data;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+/**
+ * Reply produced by CommandHandler: plain text, optionally rendered as a photo with caption,
+ * carrying an inline keyboard or requesting a catalog export document. For callback queries the text replaces the original message
+ * and the notice is shown as the callback answer.
+ */
+@Data
+public class BotResponse
+{
+    private String text;
+    private String photoPath;
+    private InlineKeyboardMarkup inlineKeyboard;
+    private String notice;
+    private ExportRequest export;
+
+    public static BotResponse text(String text)
+    {
+        BotResponse response = new BotResponse();
+        response.setText(text);
+        return response;
+    }
+
+    public static BotResponse photo(String photoPath, String caption)
+    {
+        BotResponse response = text(caption);
+        response.setPhotoPath(photoPath);
+        return response;
+    }
+
+    public static BotResponse export(String text, ExportRequest export)
+    {
+        BotResponse response = text(text);
+        response.setExport(export);
+        return response;
+    }
+
+    public static BotResponse withInlineKeyboard(String text, InlineKeyboardMarkup inlineKeyboard)
+    {
+        BotResponse response = text(text);
+        response.setInlineKeyboard(inlineKeyboard);
+        return response;
+    }
+}
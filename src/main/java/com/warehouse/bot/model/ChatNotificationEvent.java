@@ -0,0 +1,16 @@
+package com.warehouse.bot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Message for a chat that is not a direct reply to an update (acknowledgements, alerts).
+ * Published through Spring's ApplicationEventPublisher and delivered by TelegramBotService.
+ */
+@Data
+@AllArgsConstructor
+public class ChatNotificationEvent
+{
+    private Long chatId;
+    private String text;
+}
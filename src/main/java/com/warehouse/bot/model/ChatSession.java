@@ -0,0 +1,34 @@
+package com.warehouse.bot.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Conversation state of one chat: the flow step it is in and the values collected so far
+ */
+@Data
+@NoArgsConstructor
+public class ChatSession
+{
+    private String state;
+
+    // Stock update flow
+    private Long stockProductId;
+    private Integer stockWarehouseId;
+
+    // Reserved update flow
+    private Long reservedProductId;
+
+    public ChatSession(ChatSession other)
+    {
+        this.state = other.state;
+        this.stockProductId = other.stockProductId;
+        this.stockWarehouseId = other.stockWarehouseId;
+        this.reservedProductId = other.reservedProductId;
+    }
+
+    public boolean isEmpty()
+    {
+        return state == null && stockProductId == null && stockWarehouseId == null && reservedProductId == null;
+    }
+}
@@ -0,0 +1,14 @@
+package com.warehouse.bot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportRequest
+{
+    private boolean compressed;
+    private boolean withAttributes;
+}
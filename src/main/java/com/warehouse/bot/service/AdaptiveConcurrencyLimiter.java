@@ -0,0 +1,252 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caps concurrent requests to the warehouse service at a limit that follows observed latency
+ * (gradient style): while latency stays near its long-term baseline the limit grows by about
+ * sqrt(limit), when latency rises the limit shrinks in proportion, and transport errors or 5xx
+ * cut it multiplicatively. Callers over the limit wait up to warehouse.limiter.max-wait-ms in a
+ * short queue and are rejected after that, or at once when the queue is full.
+ * Streamed responses (callStreaming) give their permit back and record their latency at the first
+ * byte, so the time a consumer spends on the body neither holds a permit nor skews the samples.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter
+{
+
+    // Latency may exceed the baseline by this factor before the limit starts shrinking
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double BASELINE_ALPHA = 2.0 / 601;
+
+    public static class RejectedException extends RuntimeException
+    {
+        public RejectedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private final BotConfig botConfig;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Counter rejected;
+
+    // Guarded by lock
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double baselineRttNanos;
+
+    public AdaptiveConcurrencyLimiter(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.limit = botConfig.getLimiterInitialLimit();
+        this.rejected = Counter.builder("warehouse.limiter.rejected")
+                .description("Warehouse calls rejected by the adaptive concurrency limiter")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current allowed concurrent warehouse calls")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.limiter.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Warehouse calls currently running")
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> request)
+    {
+        if (!botConfig.isLimiterEnabled())
+        {
+            return request.get();
+        }
+
+        acquire();
+        long started = System.nanoTime();
+        boolean overloaded = false;
+        try
+        {
+            return request.get();
+        }
+        catch (ResourceAccessException | HttpServerErrorException e)
+        {
+            overloaded = true;
+            throw e;
+        }
+        finally
+        {
+            release(System.nanoTime() - started, overloaded);
+        }
+    }
+
+    /**
+     * The request calls the given Runnable once the response has started (status and headers read);
+     * the permit is released there, or when the request ends if it never got that far
+     */
+    public <T> T callStreaming(Function<Runnable, T> request)
+    {
+        if (!botConfig.isLimiterEnabled())
+        {
+            return request.apply(() -> {});
+        }
+
+        acquire();
+        long started = System.nanoTime();
+        AtomicBoolean done = new AtomicBoolean();
+        boolean overloaded = false;
+        try
+        {
+            return request.apply(() ->
+            {
+                if (done.compareAndSet(false, true))
+                {
+                    release(System.nanoTime() - started, false);
+                }
+            });
+        }
+        catch (ResourceAccessException | HttpServerErrorException e)
+        {
+            overloaded = true;
+            throw e;
+        }
+        finally
+        {
+            if (done.compareAndSet(false, true))
+            {
+                release(System.nanoTime() - started, overloaded);
+            }
+        }
+    }
+
+    private void acquire()
+    {
+        lock.lock();
+        try
+        {
+            if (inFlight < (int) limit)
+            {
+                inFlight++;
+                return;
+            }
+            if (waiting >= botConfig.getLimiterMaxQueue())
+            {
+                throw reject();
+            }
+
+            waiting++;
+            try
+            {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(botConfig.getLimiterMaxWaitMillis());
+                while (inFlight >= (int) limit)
+                {
+                    if (remaining <= 0)
+                    {
+                        throw reject();
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw reject();
+            }
+            finally
+            {
+                waiting--;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private RejectedException reject()
+    {
+        rejected.increment();
+        return new RejectedException("Warehouse service is busy (concurrency limit " + (int) limit + "), please retry");
+    }
+
+    private void release(long rttNanos, boolean overloaded)
+    {
+        lock.lock();
+        try
+        {
+            boolean saturated = inFlight >= (int) limit / 2;
+            inFlight--;
+
+            if (overloaded)
+            {
+                limit = Math.max(botConfig.getLimiterMinLimit(), limit * BACKOFF_RATIO);
+            }
+            else
+            {
+                baselineRttNanos = baselineRttNanos == 0
+                        ? rttNanos
+                        : baselineRttNanos + BASELINE_ALPHA * (rttNanos - baselineRttNanos);
+                double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRttNanos / rttNanos));
+                double target = limit * gradient + Math.sqrt(limit);
+                // Do not grow a limit the traffic is not using
+                if (target < limit || saturated)
+                {
+                    limit = limit * (1 - SMOOTHING) + target * SMOOTHING;
+                    limit = Math.max(botConfig.getLimiterMinLimit(), Math.min(botConfig.getLimiterMaxLimit(), limit));
+                }
+            }
+            released.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit()
+    {
+        lock.lock();
+        try
+        {
+            return (int) limit;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight()
+    {
+        lock.lock();
+        try
+        {
+            return inFlight;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount()
+    {
+        return (long) rejected.count();
+    }
+}
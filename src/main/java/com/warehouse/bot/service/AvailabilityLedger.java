@@ -0,0 +1,250 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory view of total_quantity and num_reserved_goods per product.
+ * Kept current from every decoded catalog/product response and from our own successful writes,
+ * so reservations that obviously exceed the available stock are rejected without a backend call.
+ * Each product has its own lock; reservations for different products never contend.
+ * Listeners are told about every change of a product's quantities as it happens,
+ * so consumers such as low-stock alerts and watches work per change instead of re-scanning the catalog.
+ * A read cannot tell whether it already includes a reserved delta that is pending or being written,
+ * so reserved is only taken from reads sent with nothing pending and after our last reserved write;
+ * otherwise such a delta would be counted once in the read and once more when it is committed.
+ */
+@Component
+public class AvailabilityLedger
+{
+
+    private static final class Entry
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean known;
+        private int total;
+        private int reserved;
+        // Reserved deltas accepted but not yet written (write-behind mode)
+        private int pendingReserved;
+        // System.nanoTime() of the last reserved delta committed here, if any
+        private boolean reservedWritten;
+        private long reservedWrittenAt;
+    }
+
+    /**
+     * Called under the product's lock, in the order the changes were applied; must not block
+     */
+    public interface Listener
+    {
+        /**
+         * @param before quantities before the change, null when the product was not known yet
+         */
+        void quantitiesChanged(long productId, Snapshot before, Snapshot after);
+    }
+
+    /**
+     * @param reserved reserved quantity including reservations accepted but not yet written
+     */
+    public record Snapshot(int total, int reserved)
+    {
+        public int available()
+        {
+            return total - reserved;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Counter rejected;
+
+    public AvailabilityLedger(MeterRegistry meterRegistry)
+    {
+        this.rejected = Counter.builder("warehouse.ledger.rejected")
+                .description("Reservations rejected locally without a backend call")
+                .register(meterRegistry);
+    }
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sync from a product freshly decoded from the warehouse service
+     * @param sentAt System.nanoTime() when the request that returned it was sent
+     */
+    public void observe(Product product, long sentAt)
+    {
+        if (product.getId() == null || product.getTotal_quantity() == null)
+        {
+            return;
+        }
+        Entry entry = entry(product.getId().longValue());
+        entry.lock.lock();
+        try
+        {
+            Snapshot before = snapshotLocked(entry);
+            boolean reservedCurrent = entry.pendingReserved == 0
+                    && (!entry.reservedWritten || sentAt - entry.reservedWrittenAt > 0);
+            if (!entry.known || reservedCurrent)
+            {
+                entry.reserved = product.getNum_reserved_goods() != null ? product.getNum_reserved_goods() : 0;
+            }
+            entry.known = true;
+            entry.total = product.getTotal_quantity();
+            fireIfChanged(product.getId().longValue(), entry, before);
+        }
+        finally
+        {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Available quantity (total - reserved - pending reservations), or null when the product has not been seen
+     */
+    public Integer available(long productId)
+    {
+        Entry entry = entries.get(productId);
+        if (entry == null)
+        {
+            return null;
+        }
+        entry.lock.lock();
+        try
+        {
+            return availableLocked(entry);
+        }
+        finally
+        {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Validate a reserved delta against the ledger and, when it fits, count it as pending in the same step,
+     * so concurrent reservations of the same product see each other without holding the lock across the write.
+     * Returns the rejection message, or null when the delta is held; the caller then commits it
+     * (commitPendingReserved), keeps it pending while the write is queued, or releases it (settlePendingReserved).
+     */
+    public String hold(long productId, int quantityChange)
+    {
+        Entry entry = entry(productId);
+        entry.lock.lock();
+        try
+        {
+            if (entry.known)
+            {
+                int reservedAfter = entry.reserved + entry.pendingReserved + quantityChange;
+                if (reservedAfter > entry.total)
+                {
+                    rejected.increment();
+                    return String.format("❌ Not enough stock to reserve %d more.\n" +
+                            "📦 Product ID: %d\n🏠 Quantity: %d\n📦 Reserved: %d\n✅ Available: %d",
+                            quantityChange, productId, entry.total, entry.reserved + entry.pendingReserved,
+                            entry.total - entry.reserved - entry.pendingReserved);
+                }
+                if (reservedAfter < 0)
+                {
+                    rejected.increment();
+                    return String.format("❌ Cannot release %d: only %d reserved for product %d.",
+                            -quantityChange, entry.reserved + entry.pendingReserved, productId);
+                }
+            }
+            Snapshot before = snapshotLocked(entry);
+            entry.pendingReserved += quantityChange;
+            fireIfChanged(productId, entry, before);
+            return null;
+        }
+        finally
+        {
+            entry.lock.unlock();
+        }
+    }
+
+    public void applyStock(long productId, int quantityChange)
+    {
+        update(productId, entry -> entry.total += quantityChange);
+    }
+
+    /**
+     * A reserved delta was accepted for a later write; count it against availability until settled
+     */
+    public void addPendingReserved(long productId, int quantityChange)
+    {
+        update(productId, entry -> entry.pendingReserved += quantityChange);
+    }
+
+    public void settlePendingReserved(long productId, int quantityChange)
+    {
+        update(productId, entry -> entry.pendingReserved -= quantityChange);
+    }
+
+    /**
+     * A pending reserved delta was written: move it from pending to reserved in one step,
+     * so listeners never see availability jump or dip in between
+     */
+    public void commitPendingReserved(long productId, int quantityChange)
+    {
+        update(productId, entry ->
+        {
+            entry.pendingReserved -= quantityChange;
+            entry.reserved += quantityChange;
+            entry.reservedWritten = true;
+            entry.reservedWrittenAt = System.nanoTime();
+        });
+    }
+
+    private void update(long productId, Consumer<Entry> change)
+    {
+        Entry entry = entry(productId);
+        entry.lock.lock();
+        try
+        {
+            Snapshot before = snapshotLocked(entry);
+            change.accept(entry);
+            fireIfChanged(productId, entry, before);
+        }
+        finally
+        {
+            entry.lock.unlock();
+        }
+    }
+
+    private static Integer availableLocked(Entry entry)
+    {
+        return entry.known ? entry.total - entry.reserved - entry.pendingReserved : null;
+    }
+
+    private static Snapshot snapshotLocked(Entry entry)
+    {
+        return entry.known ? new Snapshot(entry.total, entry.reserved + entry.pendingReserved) : null;
+    }
+
+    private void fireIfChanged(long productId, Entry entry, Snapshot before)
+    {
+        Snapshot after = snapshotLocked(entry);
+        if (after == null || after.equals(before))
+        {
+            return;
+        }
+        for (Listener listener : listeners)
+        {
+            listener.quantitiesChanged(productId, before, after);
+        }
+    }
+
+    private Entry entry(long productId)
+    {
+        return entries.computeIfAbsent(productId, id -> new Entry());
+    }
+}
@@ -0,0 +1,346 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sends one message to every chat in the ChatRegistry. Runs on the polling instance, whose registry
+ * sees every chat of the cluster.
+ * Chats are walked in ascending id order, taking only the send slots of the TelegramSendLimiter that
+ * replies and notifications leave free; a 429 pauses all sends for the advertised retry_after.
+ * Progress (last chat id handled, counts) is checkpointed to a file, so a broadcast interrupted by a
+ * restart resumes after the last checkpoint: at most checkpoint-every chats can get the message twice.
+ * The initiating chat receives a delivery report when the broadcast finishes.
+ */
+@Component
+@Slf4j
+public class BroadcastService
+{
+
+    /**
+     * Delivery of a single broadcast message, supplied by TelegramBotService
+     */
+    @FunctionalInterface
+    public interface Sender
+    {
+        void send(long chatId, String text) throws TelegramApiException;
+    }
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int MAX_ATTEMPTS_PER_CHAT = 3;
+
+    private final BotConfig botConfig;
+    private final ChatRegistry chatRegistry;
+    private final TelegramSendLimiter sendLimiter;
+    private final Set<Long> adminChatIds;
+    private final Counter delivered;
+    private final Counter failed;
+    private volatile Sender sender;
+    private volatile Thread worker;
+    private volatile Progress current;
+
+    /**
+     * Broadcast state as checkpointed to disk
+     */
+    private static final class Progress
+    {
+        private long initiatorChatId;
+        private String text;
+        private long lastChatId = Long.MIN_VALUE;
+        // Written by the broadcast thread only, read by status()
+        private volatile long delivered;
+        private volatile long failed;
+        private volatile long total;
+        private long startedAt;
+    }
+
+    public BroadcastService(BotConfig botConfig, ChatRegistry chatRegistry, TelegramSendLimiter sendLimiter,
+                            MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.chatRegistry = chatRegistry;
+        this.sendLimiter = sendLimiter;
+        this.adminChatIds = Arrays.stream(botConfig.getBroadcastAdminChatIds().split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(Long::parseLong)
+                .collect(Collectors.toUnmodifiableSet());
+        this.delivered = Counter.builder("bot.broadcast.messages")
+                .tag("outcome", "delivered")
+                .description("Broadcast messages by delivery outcome")
+                .register(meterRegistry);
+        this.failed = Counter.builder("bot.broadcast.messages")
+                .tag("outcome", "failed")
+                .description("Broadcast messages by delivery outcome")
+                .register(meterRegistry);
+    }
+
+    public void attachSender(Sender sender)
+    {
+        this.sender = sender;
+    }
+
+    public boolean isAdmin(Long chatId)
+    {
+        return adminChatIds.contains(chatId);
+    }
+
+    /**
+     * Resume a broadcast that was running when the previous instance stopped.
+     * Waits for the sender, which TelegramBotService attaches once it is constructed.
+     */
+    @PostConstruct
+    public void resume()
+    {
+        Progress saved = readCheckpoint();
+        if (saved != null)
+        {
+            log.info("📣 Resuming broadcast after chat {}: {} delivered, {} failed so far",
+                    saved.lastChatId, saved.delivered, saved.failed);
+            launch(saved);
+        }
+    }
+
+    /**
+     * Returns the reply for the initiating chat
+     */
+    public synchronized String start(Long initiatorChatId, String text)
+    {
+        if (!isAdmin(initiatorChatId))
+        {
+            return "❌ Broadcasts are limited to administrator chats.";
+        }
+        if (text == null || text.isBlank())
+        {
+            return "Usage: /broadcast <message>";
+        }
+        if (worker != null && worker.isAlive())
+        {
+            return "⏳ Another broadcast is still running. Check /broadcast_status.";
+        }
+        Progress progress = new Progress();
+        progress.initiatorChatId = initiatorChatId;
+        progress.text = text;
+        progress.total = chatRegistry.size();
+        progress.startedAt = System.currentTimeMillis();
+        writeCheckpoint(progress);
+        launch(progress);
+        return String.format("📣 Broadcasting to %d chats at up to %.0f messages/s, behind regular replies.",
+                progress.total, sendLimiter.getRatePerSecond());
+    }
+
+    public String status()
+    {
+        Progress progress = current;
+        if (progress == null || worker == null || !worker.isAlive())
+        {
+            return "No broadcast is running.";
+        }
+        return String.format("📣 Broadcast in progress: %d delivered, %d failed of %d chats (%.1f msg/s).",
+                progress.delivered, progress.failed, progress.total, throughput(progress));
+    }
+
+    private synchronized void launch(Progress progress)
+    {
+        current = progress;
+        worker = new Thread(() -> run(progress), "broadcast");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run(Progress progress)
+    {
+        try
+        {
+            while (sender == null)
+            {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            long[] chatIds = chatRegistry.snapshot();
+            progress.total = chatIds.length;
+            int from = firstAfter(chatIds, progress.lastChatId);
+            int sinceCheckpoint = 0;
+
+            for (int i = from; i < chatIds.length; i++)
+            {
+                deliver(chatIds[i], progress.text, progress);
+                progress.lastChatId = chatIds[i];
+                if (++sinceCheckpoint >= botConfig.getBroadcastCheckpointEvery())
+                {
+                    writeCheckpoint(progress);
+                    sinceCheckpoint = 0;
+                }
+            }
+            finish(progress);
+        }
+        catch (InterruptedException e)
+        {
+            // Shutting down: keep the checkpoint so the next start resumes from here
+            writeCheckpoint(progress);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(long chatId, String text, Progress progress) throws InterruptedException
+    {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS_PER_CHAT; attempt++)
+        {
+            sendLimiter.acquireBackground();
+            try
+            {
+                sender.send(chatId, text);
+                progress.delivered++;
+                delivered.increment();
+                return;
+            }
+            catch (TelegramApiRequestException e)
+            {
+                if (e.getErrorCode() != null && e.getErrorCode() == TOO_MANY_REQUESTS
+                        && e.getParameters() != null && e.getParameters().getRetryAfter() != null)
+                {
+                    log.warn("⏳ Broadcast rate limited, pausing all sends for {} s", e.getParameters().getRetryAfter());
+                    sendLimiter.pause(e.getParameters().getRetryAfter());
+                    continue;
+                }
+                // Blocked by the user, chat deleted and similar: retrying will not help
+                log.debug("Broadcast to chat {} failed: {}", chatId, e.getMessage());
+                break;
+            }
+            catch (TelegramApiException e)
+            {
+                log.debug("Broadcast to chat {} failed (attempt {}): {}", chatId, attempt, e.getMessage());
+            }
+        }
+        progress.failed++;
+        failed.increment();
+    }
+
+    private void finish(Progress progress)
+    {
+        double seconds = (System.currentTimeMillis() - progress.startedAt) / 1000.0;
+        String report = String.format("📣 Broadcast finished in %.1f s\n✅ Delivered: %d\n❌ Failed: %d\n⚡ Throughput: %.1f msg/s",
+                seconds, progress.delivered, progress.failed, throughput(progress));
+        log.info("📣 Broadcast finished: {} delivered, {} failed in {} s", progress.delivered, progress.failed, seconds);
+        try
+        {
+            Files.deleteIfExists(Path.of(botConfig.getBroadcastCheckpointFile()));
+        }
+        catch (IOException e)
+        {
+            log.error("Error removing broadcast checkpoint: {}", e.getMessage());
+        }
+        try
+        {
+            sendLimiter.acquire();
+            sender.send(progress.initiatorChatId, report);
+        }
+        catch (TelegramApiException e)
+        {
+            log.error("❌ Failed to send broadcast report to chatId {}: {}", progress.initiatorChatId, e.getMessage());
+        }
+    }
+
+    private static double throughput(Progress progress)
+    {
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - progress.startedAt) / 1000.0);
+        return (progress.delivered + progress.failed) / seconds;
+    }
+
+    private static int firstAfter(long[] chatIds, long lastChatId)
+    {
+        if (lastChatId == Long.MIN_VALUE)
+        {
+            return 0;
+        }
+        int index = Arrays.binarySearch(chatIds, lastChatId);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private void writeCheckpoint(Progress progress)
+    {
+        Properties properties = new Properties();
+        properties.setProperty("initiator", Long.toString(progress.initiatorChatId));
+        properties.setProperty("text", progress.text);
+        properties.setProperty("last", Long.toString(progress.lastChatId));
+        properties.setProperty("delivered", Long.toString(progress.delivered));
+        properties.setProperty("failed", Long.toString(progress.failed));
+        properties.setProperty("started", Long.toString(progress.startedAt));
+
+        Path file = Path.of(botConfig.getBroadcastCheckpointFile());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            if (file.getParent() != null)
+            {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+            {
+                properties.store(writer, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.error("Error writing broadcast checkpoint: {}", e.getMessage());
+        }
+    }
+
+    private Progress readCheckpoint()
+    {
+        Path file = Path.of(botConfig.getBroadcastCheckpointFile());
+        if (!Files.exists(file))
+        {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            Properties properties = new Properties();
+            properties.load(reader);
+            Progress progress = new Progress();
+            progress.initiatorChatId = Long.parseLong(properties.getProperty("initiator"));
+            progress.text = properties.getProperty("text");
+            progress.lastChatId = Long.parseLong(properties.getProperty("last"));
+            progress.delivered = Long.parseLong(properties.getProperty("delivered"));
+            progress.failed = Long.parseLong(properties.getProperty("failed"));
+            progress.startedAt = Long.parseLong(properties.getProperty("started"));
+            return progress;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.error("Error reading broadcast checkpoint, broadcast not resumed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException
+    {
+        Thread running = worker;
+        if (running != null && running.isAlive())
+        {
+            running.interrupt();
+            running.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+}
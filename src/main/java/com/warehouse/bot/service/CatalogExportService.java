@@ -0,0 +1,204 @@
+package com.warehouse.bot.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.warehouse.bot.model.ExportRequest;
+import com.warehouse.bot.model.Product;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the whole catalog from /products into a temporary CSV (optionally gzip-compressed) file.
+ * Products are written as they are decoded, so memory use does not grow with catalog size.
+ */
+@Service
+@Slf4j
+public class CatalogExportService
+{
+
+    // Attribute lookups in flight at once; rows are still written in catalog order
+    private static final int ATTRIBUTE_WINDOW = 16;
+
+    private static final String HEADER = "id,name,category_name,sku,base_price,is_active,total_quantity," +
+            "num_reserved_goods,path_to_photo,created_at,updated_at";
+
+    private final WarehouseApiService warehouseApiService;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService attributeExecutor = Executors.newFixedThreadPool(ATTRIBUTE_WINDOW / 2);
+
+    public CatalogExportService(WarehouseApiService warehouseApiService, ObjectMapper objectMapper)
+    {
+        this.warehouseApiService = warehouseApiService;
+        this.objectMapper = objectMapper;
+    }
+
+    public record ExportFile(Path path, String fileName, int products) {}
+
+    /**
+     * Run the export in the background. The caller owns the returned file and must delete it.
+     */
+    public CompletableFuture<ExportFile> export(ExportRequest request)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return writeExport(request);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }, exportExecutor);
+    }
+
+    private ExportFile writeExport(ExportRequest request) throws IOException
+    {
+        String fileName = "catalog-" + LocalDate.now() + (request.isCompressed() ? ".csv.gz" : ".csv");
+        Path file = Files.createTempFile("catalog-export-", request.isCompressed() ? ".csv.gz" : ".csv");
+        long started = System.currentTimeMillis();
+
+        try (OutputStream out = openOutput(file, request.isCompressed());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
+        {
+            writer.write(request.isWithAttributes() ? HEADER + ",attributes\n" : HEADER + "\n");
+
+            int count;
+            if (request.isWithAttributes())
+            {
+                Deque<CompletableFuture<String>> window = new ArrayDeque<>(ATTRIBUTE_WINDOW);
+                count = warehouseApiService.streamProducts(Map.of(), product ->
+                {
+                    String row = formatRow(product);
+                    window.addLast(CompletableFuture.supplyAsync(
+                            () -> row + "," + escape(attributesJson(product)), attributeExecutor));
+                    if (window.size() >= ATTRIBUTE_WINDOW)
+                    {
+                        writeLine(writer, window.removeFirst().join());
+                    }
+                });
+                while (!window.isEmpty())
+                {
+                    writeLine(writer, window.removeFirst().join());
+                }
+            }
+            else
+            {
+                count = warehouseApiService.streamProducts(Map.of(), product -> writeLine(writer, formatRow(product)));
+            }
+
+            log.info("📤 Catalog export written: {} products in {} ms", count, System.currentTimeMillis() - started);
+            return new ExportFile(file, fileName, count);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private OutputStream openOutput(Path file, boolean compressed) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+        return compressed ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    private String attributesJson(Product product)
+    {
+        Object attributes = warehouseApiService.getAttributes(product);
+        if (attributes == null)
+        {
+            return "";
+        }
+        try
+        {
+            return objectMapper.writeValueAsString(attributes);
+        }
+        catch (JsonProcessingException e)
+        {
+            return "";
+        }
+    }
+
+    private String formatRow(Product product)
+    {
+        return String.join(",",
+                String.valueOf(product.getId()),
+                escape(product.getName()),
+                escape(product.getCategory_name()),
+                escape(product.getSku()),
+                product.getBase_price() != null ? product.getBase_price().toPlainString() : "",
+                String.valueOf(Boolean.TRUE.equals(product.getIs_active())),
+                product.getTotal_quantity() != null ? product.getTotal_quantity().toString() : "",
+                String.valueOf(product.getNum_reserved_goods()),
+                escape(product.getPath_to_photo()),
+                product.getCreated_at() != null ? product.getCreated_at().toString() : "",
+                product.getUpdated_at() != null ? product.getUpdated_at().toString() : "");
+    }
+
+    private static void writeLine(Writer writer, String line)
+    {
+        try
+        {
+            writer.write(line);
+            writer.write('\n');
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String escape(String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+        {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Stop taking new exports and let the queued ones finish within the timeout
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException
+    {
+        exportExecutor.shutdown();
+        boolean finished = exportExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        attributeExecutor.shutdown();
+        return finished;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        exportExecutor.shutdown();
+        attributeExecutor.shutdown();
+    }
+}
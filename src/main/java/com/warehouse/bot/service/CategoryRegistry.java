@@ -0,0 +1,90 @@
+package com.warehouse.bot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.warehouse.bot.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All ProductCategory beans indexed by category name and SKU prefix.
+ * Built once at startup together with each category's JSON reader; a lookup is one hash map get.
+ */
+@Component
+@Slf4j
+public class CategoryRegistry
+{
+
+    /**
+     * A category with the reader for its attributes, built once
+     */
+    public record Registration<T>(ProductCategory<T> category, ObjectReader reader)
+    {
+        /**
+         * Rendered attributes, null when they are not of this category's type
+         */
+        public String render(Object attributes)
+        {
+            Class<T> type = category.attributesType();
+            return type.isInstance(attributes) ? category.render(type.cast(attributes)) : null;
+        }
+    }
+
+    private final Map<String, Registration<?>> byName = new HashMap<>();
+    private final Map<String, Registration<?>> bySkuPrefix = new HashMap<>();
+
+    public CategoryRegistry(List<ProductCategory<?>> categories, ObjectMapper objectMapper)
+    {
+        for (ProductCategory<?> category : categories)
+        {
+            Registration<?> registration = register(category, objectMapper);
+            for (String name : category.names())
+            {
+                if (byName.put(name, registration) != null)
+                {
+                    throw new IllegalStateException("Category name registered twice: " + name);
+                }
+            }
+            if (category.skuPrefix() != null && bySkuPrefix.put(category.skuPrefix(), registration) != null)
+            {
+                throw new IllegalStateException("SKU prefix registered twice: " + category.skuPrefix());
+            }
+        }
+        log.info("🗂️ Registered product categories: {}", byName.keySet());
+    }
+
+    private static <T> Registration<T> register(ProductCategory<T> category, ObjectMapper objectMapper)
+    {
+        return new Registration<>(category, objectMapper.readerFor(category.attributesType()));
+    }
+
+    /**
+     * Category of the product by category_name, falling back to the SKU prefix; null when neither is known
+     */
+    public Registration<?> lookup(Product product)
+    {
+        Registration<?> registration = product.getCategory_name() != null ? byName.get(product.getCategory_name()) : null;
+        if (registration == null && product.getSku() != null)
+        {
+            int dash = product.getSku().indexOf('-');
+            if (dash > 0)
+            {
+                registration = bySkuPrefix.get(product.getSku().substring(0, dash));
+            }
+        }
+        return registration;
+    }
+
+    /**
+     * Attribute lines for the product card, null when the product has no known category or attributes
+     */
+    public String render(Product product, Object attributes)
+    {
+        Registration<?> registration = attributes != null ? lookup(product) : null;
+        return registration != null ? registration.render(attributes) : null;
+    }
+}
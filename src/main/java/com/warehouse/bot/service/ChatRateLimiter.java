@@ -0,0 +1,128 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Per-chat and per-command token buckets, checked before an update reaches CommandHandler.
+ * Each bucket is a single AtomicLong holding its theoretical arrival time (GCRA), so acquiring
+ * is one CAS and needs no lock. A bucket whose arrival time has passed is full and therefore
+ * equivalent to no bucket, which is what lets the maps be pruned to a fixed size.
+ */
+@Component
+public class ChatRateLimiter
+{
+
+    private final BotConfig botConfig;
+    private final Set<String> limitedCommands;
+    private final Map<Long, AtomicLong> chatBuckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> commandBuckets = new ConcurrentHashMap<>();
+    private final Counter chatThrottled;
+    private final Counter commandThrottled;
+
+    public ChatRateLimiter(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.limitedCommands = Arrays.stream(botConfig.getRateLimitCommands().split(","))
+                .map(String::trim)
+                .filter(command -> !command.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.chatThrottled = Counter.builder("bot.ratelimit.throttled")
+                .tag("scope", "chat")
+                .description("Updates rejected by the per-chat bucket")
+                .register(meterRegistry);
+        this.commandThrottled = Counter.builder("bot.ratelimit.throttled")
+                .tag("scope", "command")
+                .description("Updates rejected by a per-command bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take a token for the chat and, for expensive commands, for the command.
+     * Returns 0 when the update may proceed, otherwise the milliseconds until it would be allowed.
+     */
+    public long acquire(long chatId, String command)
+    {
+        if (!botConfig.isRateLimitEnabled())
+        {
+            return 0;
+        }
+
+        long wait = take(chatBuckets, chatId, botConfig.getRateLimitChatPerMinute(), botConfig.getRateLimitChatBurst());
+        if (wait > 0)
+        {
+            chatThrottled.increment();
+            return wait;
+        }
+        if (command != null && limitedCommands.contains(command))
+        {
+            wait = take(commandBuckets, chatId + ":" + command,
+                    botConfig.getRateLimitCommandPerMinute(), botConfig.getRateLimitCommandBurst());
+            if (wait > 0)
+            {
+                commandThrottled.increment();
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    private <K> long take(Map<K, AtomicLong> buckets, K key, int perMinute, int burst)
+    {
+        long interval = TimeUnit.MINUTES.toNanos(1) / Math.max(perMinute, 1);
+        long tolerance = interval * Math.max(burst, 1);
+        if (buckets.size() >= botConfig.getRateLimitMaxTracked())
+        {
+            prune(buckets, botConfig.getRateLimitMaxTracked());
+        }
+        // A new bucket starts full
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+
+        while (true)
+        {
+            long now = System.nanoTime();
+            long arrival = bucket.get();
+            long next = Math.max(arrival, now) + interval;
+            if (next - now > tolerance)
+            {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - now - tolerance));
+            }
+            if (bucket.compareAndSet(arrival, next))
+            {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop full buckets; if the map is still too large, evict the buckets closest to full (earliest
+     * arrival time) until a quarter of the room is free, so the most throttled chats stay throttled
+     */
+    private static <K> void prune(Map<K, AtomicLong> buckets, int maxTracked)
+    {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        int excess = buckets.size() - maxTracked * 3 / 4;
+        if (excess <= 0)
+        {
+            return;
+        }
+        long[] arrivals = buckets.values().stream().mapToLong(bucket -> bucket.get() - now).sorted().toArray();
+        if (arrivals.length == 0)
+        {
+            return;
+        }
+        long threshold = arrivals[Math.min(excess, arrivals.length) - 1];
+        buckets.values().removeIf(bucket -> bucket.get() - now <= threshold);
+    }
+}
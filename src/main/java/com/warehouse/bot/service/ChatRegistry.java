@@ -0,0 +1,155 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Every chat whose updates this instance polled, for broadcasts; in cluster mode the polling
+ * instance registers all chats, including the ones it forwards.
+ * Ids live in an open-addressing long table (8 bytes per slot, no boxing) and are appended
+ * to a binary file as 8-byte big-endian values the first time they are seen.
+ * A write lost in a crash only means the chat is registered again by its next message.
+ */
+@Component
+@Slf4j
+public class ChatRegistry
+{
+
+    // Telegram chat ids are never 0, so 0 marks a free slot
+    private static final long FREE = 0;
+
+    private final BotConfig botConfig;
+    private long[] table = new long[1024];
+    private int size;
+    private FileChannel file;
+
+    public ChatRegistry(BotConfig botConfig)
+    {
+        this.botConfig = botConfig;
+    }
+
+    @PostConstruct
+    public synchronized void load() throws IOException
+    {
+        Path path = Path.of(botConfig.getChatRegistryFile());
+        if (path.getParent() != null)
+        {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path))
+        {
+            ByteBuffer ids = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (ids.remaining() >= Long.BYTES)
+            {
+                insert(ids.getLong());
+            }
+            log.info("💬 Loaded {} known chats", size);
+        }
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Drop a torn tail so later appends stay aligned to 8 bytes
+        file.truncate(file.size() - file.size() % Long.BYTES);
+    }
+
+    /**
+     * Called for every polled update; O(1) and only touches the disk for a chat seen for the first time
+     */
+    public synchronized void register(long chatId)
+    {
+        if (chatId == FREE || !insert(chatId))
+        {
+            return;
+        }
+        try
+        {
+            file.write(ByteBuffer.allocate(Long.BYTES).putLong(0, chatId));
+        }
+        catch (IOException e)
+        {
+            log.error("Error saving chat {}: {}", chatId, e.getMessage());
+        }
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * All known chat ids in ascending order; the order broadcasts walk and checkpoint in
+     */
+    public synchronized long[] snapshot()
+    {
+        long[] ids = new long[size];
+        int count = 0;
+        for (long id : table)
+        {
+            if (id != FREE)
+            {
+                ids[count++] = id;
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private boolean insert(long chatId)
+    {
+        if ((size + 1) * 2 > table.length)
+        {
+            resize();
+        }
+        int mask = table.length - 1;
+        int slot = hash(chatId) & mask;
+        while (table[slot] != FREE)
+        {
+            if (table[slot] == chatId)
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = chatId;
+        size++;
+        return true;
+    }
+
+    private void resize()
+    {
+        long[] old = table;
+        table = new long[old.length * 2];
+        size = 0;
+        for (long id : old)
+        {
+            if (id != FREE)
+            {
+                insert(id);
+            }
+        }
+    }
+
+    private static int hash(long chatId)
+    {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException
+    {
+        if (file != null)
+        {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Consistent-hash ring that assigns every chat to one bot instance.
+ * Each instance from bot.cluster.nodes ("id=url,id=url") is placed on the ring at
+ * bot.cluster.virtual-nodes points, so adding or removing an instance only moves
+ * the chats between it and its ring neighbours.
+ */
+@Component
+@Slf4j
+public class ChatShardRing
+{
+
+    private final String localId;
+    private final Map<String, String> nodeUrls = new LinkedHashMap<>();
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ChatShardRing(BotConfig botConfig)
+    {
+        this.localId = botConfig.getClusterInstanceId();
+        if (!botConfig.isClusterEnabled())
+        {
+            return;
+        }
+
+        for (String node : botConfig.getClusterNodes().split(","))
+        {
+            String[] parts = node.trim().split("=", 2);
+            if (parts.length == 2)
+            {
+                nodeUrls.put(parts[0].trim(), parts[1].trim().replaceAll("/+$", ""));
+            }
+        }
+        for (String nodeId : nodeUrls.keySet())
+        {
+            for (int i = 0; i < botConfig.getClusterVirtualNodes(); i++)
+            {
+                ring.put(pointHash(nodeId + "#" + i), nodeId);
+            }
+        }
+        if (!nodeUrls.containsKey(localId))
+        {
+            log.warn("⚠️ Instance '{}' is not listed in bot.cluster.nodes and will own no chats", localId);
+        }
+        log.info("🔗 Cluster ring: {} instances, this instance is '{}'", nodeUrls.size(), localId);
+    }
+
+    /**
+     * Instance id owning the chat; the local instance when clustering is off
+     */
+    public String ownerOf(long chatId)
+    {
+        if (ring.isEmpty())
+        {
+            return localId;
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(mix(chatId));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    public boolean isLocal(long chatId)
+    {
+        return localId.equals(ownerOf(chatId));
+    }
+
+    public String urlOf(String nodeId)
+    {
+        return nodeUrls.get(nodeId);
+    }
+
+    public Map<String, String> getNodes()
+    {
+        return Collections.unmodifiableMap(nodeUrls);
+    }
+
+    private static long pointHash(String point)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(point.getBytes(StandardCharsets.UTF_8));
+        return mix(crc.getValue());
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads sequential chat ids evenly over the ring
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
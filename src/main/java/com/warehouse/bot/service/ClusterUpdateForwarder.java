@@ -0,0 +1,72 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Sends updates received by the polling instance to the instance that owns the chat
+ */
+@Service
+@Slf4j
+public class ClusterUpdateForwarder
+{
+
+    public static final String FORWARD_PATH = "/internal/updates";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final RestTemplate restTemplate;
+    private final BotConfig botConfig;
+    private final ChatShardRing shardRing;
+
+    public ClusterUpdateForwarder(RestTemplate restTemplate, BotConfig botConfig, ChatShardRing shardRing)
+    {
+        this.restTemplate = restTemplate;
+        this.botConfig = botConfig;
+        this.shardRing = shardRing;
+        if (botConfig.isClusterEnabled() && botConfig.getClusterSecret().isBlank())
+        {
+            // The forward endpoint accepts updates for any chat; without a secret anyone could post them
+            throw new IllegalStateException("bot.cluster.secret must be set when bot.cluster.enabled=true");
+        }
+    }
+
+    /**
+     * Returns true if the owning instance accepted the update
+     */
+    public boolean forward(String nodeId, Update update)
+    {
+        String url = shardRing.urlOf(nodeId);
+        if (url == null)
+        {
+            return false;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(SECRET_HEADER, botConfig.getClusterSecret());
+        try
+        {
+            ResponseEntity<Void> response = restTemplate.postForEntity(
+                    url + FORWARD_PATH, new HttpEntity<>(update, headers), Void.class);
+            return response.getStatusCode().is2xxSuccessful();
+        }
+        catch (RestClientException e)
+        {
+            log.warn("⚠️ Failed to forward update {} to '{}': {}", update.getUpdateId(), nodeId, e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isValidSecret(String secret)
+    {
+        return SharedSecret.matches(botConfig.getClusterSecret(), secret);
+    }
+}
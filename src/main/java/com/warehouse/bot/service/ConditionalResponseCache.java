@@ -0,0 +1,173 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * Keeps the last representation of warehouse GET responses together with their
+ * ETag / Last-Modified validators, so refreshes can be sent as conditional requests.
+ * Entries are held by the configured SharedStateBackend.
+ */
+@Component
+@Slf4j
+public class ConditionalResponseCache
+{
+
+    private static final String KEY_PREFIX = "http:";
+
+    private final BotConfig botConfig;
+    private final SharedStateBackend stateBackend;
+
+    private final Counter hits;
+    private final Counter revalidations;
+    private final Counter misses;
+    private final Counter bytesSaved;
+
+    public ConditionalResponseCache(BotConfig botConfig, SharedStateBackend stateBackend, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.stateBackend = stateBackend;
+        this.hits = Counter.builder("warehouse.http.cache")
+                .tag("result", "hit")
+                .description("Reads served from a fresh cached representation without a request")
+                .register(meterRegistry);
+        this.revalidations = Counter.builder("warehouse.http.cache")
+                .tag("result", "revalidated")
+                .description("Reads answered with 304 Not Modified")
+                .register(meterRegistry);
+        this.misses = Counter.builder("warehouse.http.cache")
+                .tag("result", "miss")
+                .description("Reads that downloaded a full body")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("warehouse.http.cache.bytes.saved")
+                .baseUnit("bytes")
+                .description("Decoded body bytes not downloaded thanks to hits and revalidations")
+                .register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Entry<T> get(String url)
+    {
+        return (Entry<T>) stateBackend.getCached(KEY_PREFIX + url);
+    }
+
+    public boolean isFresh(Entry<?> entry)
+    {
+        return System.currentTimeMillis() - entry.getStoredAt() < botConfig.getCacheFreshMillis();
+    }
+
+    /**
+     * Add If-None-Match / If-Modified-Since for a cached representation
+     */
+    public void applyValidators(Entry<?> entry, HttpHeaders requestHeaders)
+    {
+        if (entry.getEtag() != null)
+        {
+            requestHeaders.set(HttpHeaders.IF_NONE_MATCH, entry.getEtag());
+        }
+        if (entry.getLastModified() != null)
+        {
+            requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+        }
+    }
+
+    public <T> T hit(Entry<T> entry)
+    {
+        hits.increment();
+        bytesSaved.increment(entry.getBytes());
+        return entry.getBody();
+    }
+
+    /**
+     * The server answered 304: keep the cached body and restart its freshness window
+     */
+    public <T> T revalidated(String url, Entry<T> entry)
+    {
+        revalidations.increment();
+        bytesSaved.increment(entry.getBytes());
+        stateBackend.putCached(KEY_PREFIX + url, new Entry<>(entry.getEtag(), entry.getLastModified(), entry.getBody(),
+                entry.getBytes(), entry.getContentHash()));
+        return entry.getBody();
+    }
+
+    /**
+     * @param contentHash checksum of the body bytes as received
+     */
+    public <T> T store(String url, HttpHeaders responseHeaders, T body, long bytes, int contentHash)
+    {
+        misses.increment();
+        stateBackend.putCached(KEY_PREFIX + url, new Entry<>(
+                responseHeaders.getETag(),
+                responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED),
+                body,
+                bytes,
+                contentHash));
+        return body;
+    }
+
+    /**
+     * Force the next read of every entry to revalidate, e.g. after one of our own writes
+     */
+    public void markStale()
+    {
+        stateBackend.updateAllCached((key, value) ->
+                key.startsWith(KEY_PREFIX) && value instanceof Entry<?> entry ? entry.stale() : value);
+    }
+
+    public String describeStats()
+    {
+        return String.format("hits=%.0f revalidated=%.0f misses=%.0f bytesSaved=%.0f",
+                hits.count(), revalidations.count(), misses.count(), bytesSaved.count());
+    }
+
+    @Getter
+    public static final class Entry<T>
+    {
+        private final String etag;
+        private final String lastModified;
+        private final T body;
+        private final long bytes;
+        private final int contentHash;
+        private final long storedAt;
+
+        Entry(String etag, String lastModified, T body, long bytes, int contentHash)
+        {
+            this(etag, lastModified, body, bytes, contentHash, System.currentTimeMillis());
+        }
+
+        private Entry(String etag, String lastModified, T body, long bytes, int contentHash, long storedAt)
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.bytes = bytes;
+            this.contentHash = contentHash;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Short fingerprint of this representation: derived from the validators when the server
+         * sends them, otherwise from the body bytes, so an unchanged refetch keeps its version
+         */
+        public int getVersion()
+        {
+            if (etag != null || lastModified != null)
+            {
+                return Objects.hash(etag, lastModified);
+            }
+            return contentHash;
+        }
+
+        Entry<T> stale()
+        {
+            return new Entry<>(etag, lastModified, body, bytes, contentHash, 0L);
+        }
+    }
+}
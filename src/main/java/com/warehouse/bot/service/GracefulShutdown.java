@@ -0,0 +1,106 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.generics.BotSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordered shutdown of the bot, run before any bean is destroyed:
+ * stop long polling, drain dispatched updates, let imports and exports finish, push pending
+ * write-behind deltas and force the session journal so a restart resumes where chats left off.
+ * All steps share one deadline (bot.shutdown.drain-timeout-ms).
+ */
+@Component
+@Slf4j
+public class GracefulShutdown implements SmartLifecycle
+{
+
+    private final BotConfig botConfig;
+    private final UpdateDispatcher updateDispatcher;
+    private final ThermocupImportService thermocupImportService;
+    private final CatalogExportService catalogExportService;
+    private final StockWriteCoalescer stockWriteCoalescer;
+    private final SessionJournal sessionJournal;
+
+    private volatile BotSession botSession;
+    private volatile boolean running;
+
+    public GracefulShutdown(BotConfig botConfig, UpdateDispatcher updateDispatcher,
+                            ThermocupImportService thermocupImportService, CatalogExportService catalogExportService,
+                            StockWriteCoalescer stockWriteCoalescer, SessionJournal sessionJournal)
+    {
+        this.botConfig = botConfig;
+        this.updateDispatcher = updateDispatcher;
+        this.thermocupImportService = thermocupImportService;
+        this.catalogExportService = catalogExportService;
+        this.stockWriteCoalescer = stockWriteCoalescer;
+        this.sessionJournal = sessionJournal;
+    }
+
+    public void setBotSession(BotSession botSession)
+    {
+        this.botSession = botSession;
+    }
+
+    @Override
+    public void start()
+    {
+        running = true;
+    }
+
+    @Override
+    public void stop()
+    {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(botConfig.getShutdownDrainTimeoutMillis());
+        log.info("⏹️ Shutting down: {} updates in flight", updateDispatcher.getInFlight());
+
+        if (botSession != null && botSession.isRunning())
+        {
+            botSession.stop();
+        }
+        try
+        {
+            updateDispatcher.drain(remainingMillis(deadline));
+            if (!thermocupImportService.awaitIdle(remainingMillis(deadline)))
+            {
+                log.warn("⚠️ Import still running at shutdown deadline");
+            }
+            if (!catalogExportService.awaitIdle(remainingMillis(deadline)))
+            {
+                log.warn("⚠️ Export still running at shutdown deadline");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        stockWriteCoalescer.flushAll();
+        sessionJournal.flush(Math.max(remainingMillis(deadline), 1000));
+        running = false;
+        log.info("✅ Shutdown drained in {} ms", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static long remainingMillis(long deadline)
+    {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public int getPhase()
+    {
+        // Stop first, while the web server and other lifecycle beans are still up
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,237 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedging for idempotent reads: when the first attempt has not answered after the operation's
+ * recent latency percentile (warehouse.hedge.percentile), an identical second request is sent and
+ * the first answer wins. The slower attempt is not aborted: a blocking httpclient5 read ignores
+ * interrupts, so it runs to completion (bounded by the read timeout), keeping its pooled connection
+ * and concurrency-limiter permit, and only its result is discarded. Each hedge is charged to a budget
+ * that refills by warehouse.hedge.budget-ratio per read, so hedges and their losers together add at
+ * most that fraction of extra requests.
+ * Attempts run on warehouse.hedge.threads workers without a queue: when all are busy the read runs
+ * on the caller unhedged, and a hedge that finds no free worker is skipped (and refunded), so the
+ * caller is never blocked running a hedge.
+ */
+@Component
+@Slf4j
+public class HedgedReadExecutor
+{
+
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 64;
+    // Budget in thousandths of a hedge, capped so an idle period cannot bank a burst of hedges
+    private static final long MAX_BUDGET = 10_000;
+
+    /**
+     * Ring of recent latencies with a periodically recomputed percentile
+     */
+    private final class LatencyTracker
+    {
+        private final long[] samples = new long[SAMPLES];
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile long delayNanos = TimeUnit.MILLISECONDS.toNanos(botConfig.getHedgeMinDelayMillis() * 10);
+
+        void record(long nanos)
+        {
+            int index = next.getAndIncrement();
+            samples[index & (SAMPLES - 1)] = nanos;
+            if ((index + 1) % RECOMPUTE_EVERY == 0)
+            {
+                long[] copy = Arrays.copyOf(samples, Math.min(index + 1, SAMPLES));
+                Arrays.sort(copy);
+                long percentile = copy[(int) Math.min(copy.length - 1, Math.floor(copy.length * botConfig.getHedgePercentile()))];
+                delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(botConfig.getHedgeMinDelayMillis()), percentile);
+            }
+        }
+    }
+
+    private final BotConfig botConfig;
+    private final ThreadPoolExecutor attempts;
+    private final Map<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+    private final Counter reads;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+
+    public HedgedReadExecutor(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.attempts = new ThreadPoolExecutor(botConfig.getHedgeThreads(), botConfig.getHedgeThreads(),
+                30L, TimeUnit.SECONDS, new SynchronousQueue<>());
+        this.attempts.allowCoreThreadTimeOut(true);
+        this.reads = Counter.builder("warehouse.hedge.reads")
+                .description("Reads eligible for hedging")
+                .register(meterRegistry);
+        this.hedges = Counter.builder("warehouse.hedge.sent")
+                .description("Second attempts sent because the first was slower than the hedge delay")
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("warehouse.hedge.won")
+                .description("Reads answered by the hedge rather than the first attempt")
+                .register(meterRegistry);
+    }
+
+    public <T> T read(String operation, Supplier<T> request)
+    {
+        if (!botConfig.isHedgeEnabled())
+        {
+            return request.get();
+        }
+
+        reads.increment();
+        refillBudget();
+        LatencyTracker tracker = trackers.computeIfAbsent(operation, key -> new LatencyTracker());
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        if (launch(request, tracker, result, outstanding, failure, false) == null)
+        {
+            // Every worker is busy: read on the caller without a hedge
+            return request.get();
+        }
+        try
+        {
+            return result.get(tracker.delayNanos, TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException slow)
+        {
+            if (takeBudget())
+            {
+                outstanding.incrementAndGet();
+                if (launch(request, tracker, result, outstanding, failure, true) != null)
+                {
+                    hedges.increment();
+                }
+                else
+                {
+                    budget.addAndGet(1000);
+                    if (outstanding.decrementAndGet() == 0)
+                    {
+                        // The first attempt failed while the hedge was being refused
+                        result.completeExceptionally(failure.get());
+                    }
+                }
+            }
+            try
+            {
+                return result.get();
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                throw unwrap(e);
+            }
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Returns null when no worker is free
+     */
+    private <T> Future<?> launch(Supplier<T> request, LatencyTracker tracker, CompletableFuture<T> result,
+                                 AtomicInteger outstanding, AtomicReference<RuntimeException> failure,
+                                 boolean isHedge)
+    {
+        Long deadline = RetryExecutor.currentAttemptDeadline();
+        try
+        {
+            return attempts.submit(() -> RetryExecutor.withAttemptDeadline(deadline, () ->
+            {
+                attempt(request, tracker, result, outstanding, failure, isHedge);
+                return null;
+            }));
+        }
+        catch (RejectedExecutionException e)
+        {
+            return null;
+        }
+    }
+
+    private <T> void attempt(Supplier<T> request, LatencyTracker tracker, CompletableFuture<T> result,
+                             AtomicInteger outstanding, AtomicReference<RuntimeException> failure, boolean isHedge)
+    {
+        long started = System.nanoTime();
+        try
+        {
+            T value = request.get();
+            tracker.record(System.nanoTime() - started);
+            if (result.complete(value) && isHedge)
+            {
+                hedgeWins.increment();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            failure.set(e);
+            // Fail only when no other attempt can still answer
+            if (outstanding.decrementAndGet() == 0)
+            {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void refillBudget()
+    {
+        long refill = Math.round(botConfig.getHedgeBudgetRatio() * 1000);
+        budget.updateAndGet(current -> Math.min(MAX_BUDGET, current + refill));
+    }
+
+    private boolean takeBudget()
+    {
+        while (true)
+        {
+            long current = budget.get();
+            if (current < 1000)
+            {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - 1000))
+            {
+                return true;
+            }
+        }
+    }
+
+    private static RuntimeException unwrap(Exception e)
+    {
+        if (e instanceof InterruptedException)
+        {
+            Thread.currentThread().interrupt();
+            return new IllegalStateException("Interrupted while waiting for a read", e);
+        }
+        Throwable cause = e.getCause();
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        attempts.shutdownNow();
+    }
+}
@@ -0,0 +1,96 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.model.ChatSession;
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Default state backend: sessions and the response cache live in this JVM, sessions are
+ * made durable by the mmap session journal. Suitable for a single instance, for tests and
+ * for sharded instances that each own their chats.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.state.backend", havingValue = "in-process", matchIfMissing = true)
+public class InProcessStateBackend implements SharedStateBackend
+{
+
+    private static final int MAX_CACHE_ENTRIES = 1024;
+
+    private final SessionJournal sessionJournal;
+    private final Map<Long, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Object> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest)
+                {
+                    return size() > MAX_CACHE_ENTRIES;
+                }
+            });
+
+    public InProcessStateBackend(SessionJournal sessionJournal)
+    {
+        this.sessionJournal = sessionJournal;
+    }
+
+    /**
+     * Resume conversations that were in progress when the bot last stopped
+     */
+    @PostConstruct
+    public void restoreSessions()
+    {
+        sessions.putAll(sessionJournal.load());
+    }
+
+    @Override
+    public ChatSession loadSession(long chatId)
+    {
+        ChatSession session = sessions.get(chatId);
+        return session != null ? new ChatSession(session) : null;
+    }
+
+    @Override
+    public void saveSession(long chatId, ChatSession session)
+    {
+        if (session == null || session.isEmpty())
+        {
+            if (sessions.remove(chatId) == null)
+            {
+                return;
+            }
+        }
+        else
+        {
+            sessions.put(chatId, new ChatSession(session));
+        }
+        sessionJournal.record(chatId, session);
+    }
+
+    @Override
+    public Object getCached(String key)
+    {
+        return cache.get(key);
+    }
+
+    @Override
+    public void putCached(String key, Object value)
+    {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void updateAllCached(BiFunction<String, Object, Object> function)
+    {
+        synchronized (cache)
+        {
+            cache.replaceAll(function);
+        }
+    }
+}
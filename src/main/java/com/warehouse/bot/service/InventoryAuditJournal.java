@@ -0,0 +1,461 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Append-only audit journal of stock and reserved mutations.
+ * Records have a fixed size and are written into a memory-mapped segment file; a background
+ * task forces the segment every warehouse.audit.fsync-ms (group commit), and a full segment is
+ * closed and a new one started. Timestamps never decrease, so a time range is located by binary
+ * search inside each segment and segments are picked by their first timestamp (the file name).
+ * An in-memory index lists each product's records in journal order (8 bytes per record, rebuilt from
+ * the segments on startup), so a product query reads only that product's records.
+ *
+ * Record (48 bytes): long timestamp | long chatId | long productId | int warehouseId | int delta
+ *                    | int latencyMicros | byte kind | byte outcome | 2 pad | long sequence
+ */
+@Component
+@Slf4j
+public class InventoryAuditJournal
+{
+
+    public enum Kind { STOCK, RESERVED }
+
+    public enum Outcome { OK, REJECTED, FAILED }
+
+    public record AuditRecord(long timestamp, long chatId, long productId, int warehouseId, int delta,
+                              int latencyMicros, Kind kind, Outcome outcome, long sequence) {}
+
+    static final int RECORD_SIZE = 48;
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final BotConfig botConfig;
+    private final Path directory;
+    private final int segmentRecords;
+    private record Segment(int ordinal, Path file) {}
+
+    /**
+     * Locators (segment ordinal << 32 | record index) of one product's records, in journal order
+     */
+    private static final class Postings
+    {
+        private long[] locators = new long[4];
+        private int size;
+
+        synchronized void add(long locator)
+        {
+            if (size == locators.length)
+            {
+                locators = Arrays.copyOf(locators, size * 2);
+            }
+            locators[size++] = locator;
+        }
+
+        synchronized long[] snapshot()
+        {
+            return Arrays.copyOf(locators, size);
+        }
+    }
+
+    // first timestamp -> segment, oldest first; ordinals follow the same order
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final List<Path> segmentFiles = new CopyOnWriteArrayList<>();
+    private final Map<Long, Postings> byProduct = new ConcurrentHashMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "audit-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by appendLock
+    private FileChannel channel;
+    private MappedByteBuffer active;
+    private int activeOrdinal;
+    private long lastTimestamp;
+    private long nextSequence;
+    private volatile boolean dirty;
+
+    public InventoryAuditJournal(BotConfig botConfig)
+    {
+        this.botConfig = botConfig;
+        this.directory = Path.of(botConfig.getAuditDirectory());
+        this.segmentRecords = (int) Math.max(1, botConfig.getAuditSegmentBytes() / RECORD_SIZE);
+    }
+
+    @PostConstruct
+    public void open() throws IOException
+    {
+        Files.createDirectories(directory);
+        NavigableMap<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                found.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+        found.forEach((name, file) -> addSegment(name, file));
+        long records = 0;
+        for (Segment segment : segments.values())
+        {
+            records += indexSegment(segment);
+        }
+
+        if (!segments.isEmpty())
+        {
+            // Continue the newest segment after its last written record
+            Segment newest = segments.lastEntry().getValue();
+            mapSegment(newest.file());
+            activeOrdinal = newest.ordinal();
+            int count = countRecords(active);
+            active.position(count * RECORD_SIZE);
+            if (count > 0)
+            {
+                lastTimestamp = active.getLong((count - 1) * RECORD_SIZE);
+                nextSequence = active.getLong((count - 1) * RECORD_SIZE + 40) + 1;
+            }
+        }
+        long interval = botConfig.getAuditFsyncMillis();
+        flusher.scheduleWithFixedDelay(this::force, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("📒 Audit journal: {} segments, {} records of {} products in {}",
+                segments.size(), records, byProduct.size(), directory);
+    }
+
+    private void addSegment(long name, Path file)
+    {
+        segmentFiles.add(file);
+        segments.put(name, new Segment(segmentFiles.size() - 1, file));
+    }
+
+    /**
+     * Add a closed or reopened segment's records to the product index; returns the record count
+     */
+    private int indexSegment(Segment segment)
+    {
+        try
+        {
+            MappedByteBuffer buffer = mapForReading(segment.file());
+            int count = countRecords(buffer);
+            for (int index = 0; index < count; index++)
+            {
+                addPosting(buffer.getLong(index * RECORD_SIZE + 16), segment.ordinal(), index);
+            }
+            return count;
+        }
+        catch (IOException e)
+        {
+            log.error("❌ Cannot index audit segment {}: {}", segment.file(), e.getMessage());
+            return 0;
+        }
+    }
+
+    private void addPosting(long productId, int ordinal, int index)
+    {
+        byProduct.computeIfAbsent(productId, id -> new Postings()).add((long) ordinal << 32 | index);
+    }
+
+    /**
+     * Record one mutation. Cost is a few puts into the mapped segment; durability follows within fsync-ms.
+     */
+    public void record(Kind kind, long chatId, long productId, int warehouseId, int delta,
+                       Outcome outcome, long latencyNanos)
+    {
+        appendLock.lock();
+        try
+        {
+            long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+            if (active == null || active.remaining() < RECORD_SIZE)
+            {
+                rotate(timestamp);
+            }
+            // Fields first and the timestamp last, so a reader never sees a half-written record as written
+            int offset = active.position();
+            active.putLong(offset + 8, chatId);
+            active.putLong(offset + 16, productId);
+            active.putInt(offset + 24, warehouseId);
+            active.putInt(offset + 28, delta);
+            active.putInt(offset + 32, (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+            active.put(offset + 36, (byte) kind.ordinal());
+            active.put(offset + 37, (byte) outcome.ordinal());
+            active.putLong(offset + 40, nextSequence++);
+            active.putLong(offset, timestamp);
+            active.position(offset + RECORD_SIZE);
+            addPosting(productId, activeOrdinal, offset / RECORD_SIZE);
+            lastTimestamp = timestamp;
+            dirty = true;
+        }
+        catch (IOException e)
+        {
+            log.error("❌ Audit record for product {} lost: {}", productId, e.getMessage());
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Mutations of a product with from <= timestamp <= to, oldest first, at most limit records.
+     * Reads go through the product index: one binary search locates the start of the range
+     * in the product's own records, and only those records are read after it.
+     * Reads through a mapping already see every record appended, so nothing is forced here.
+     */
+    public List<AuditRecord> query(long productId, long from, long to, int limit)
+    {
+        List<AuditRecord> result = new ArrayList<>();
+        Postings postings = byProduct.get(productId);
+        if (postings == null || to < from)
+        {
+            return result;
+        }
+        long[] locators = postings.snapshot();
+
+        try
+        {
+            int start = 0;
+            Map.Entry<Long, Segment> first = segments.floorEntry(from);
+            if (first != null)
+            {
+                MappedByteBuffer buffer = mapForReading(first.getValue().file());
+                long locator = (long) first.getValue().ordinal() << 32 | lowerBound(buffer, countRecords(buffer), from);
+                start = firstAtLeast(locators, locator);
+            }
+
+            int mappedOrdinal = -1;
+            MappedByteBuffer buffer = null;
+            for (int i = start; i < locators.length && result.size() < limit; i++)
+            {
+                int ordinal = (int) (locators[i] >>> 32);
+                if (ordinal != mappedOrdinal)
+                {
+                    buffer = mapForReading(segmentFiles.get(ordinal));
+                    mappedOrdinal = ordinal;
+                }
+                AuditRecord record = read(buffer, (int) locators[i] * RECORD_SIZE);
+                if (record.timestamp() > to)
+                {
+                    break;
+                }
+                result.add(record);
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("❌ Cannot read audit records of product {}: {}", productId, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * First position whose locator is >= the given one; locators grow with journal order
+     */
+    private static int firstAtLeast(long[] locators, long locator)
+    {
+        int low = 0;
+        int high = locators.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (locators[mid] < locator)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Every record in the journal, oldest first
+     */
+    public void replay(Consumer<AuditRecord> consumer)
+    {
+        force();
+        for (Path file : segmentFiles)
+        {
+            try
+            {
+                MappedByteBuffer buffer = mapForReading(file);
+                int count = countRecords(buffer);
+                for (int index = 0; index < count; index++)
+                {
+                    consumer.accept(read(buffer, index * RECORD_SIZE));
+                }
+            }
+            catch (IOException e)
+            {
+                log.error("❌ Cannot read audit segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * First record index with timestamp >= from
+     */
+    private static int lowerBound(ByteBuffer buffer, int count, long from)
+    {
+        int low = 0;
+        int high = count;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(mid * RECORD_SIZE) < from)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Number of written records: unwritten slots are zero, so the first zero timestamp is found by binary search
+     */
+    private static int countRecords(ByteBuffer buffer)
+    {
+        int low = 0;
+        int high = buffer.capacity() / RECORD_SIZE;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(mid * RECORD_SIZE) != 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static AuditRecord read(ByteBuffer buffer, int offset)
+    {
+        return new AuditRecord(
+                buffer.getLong(offset),
+                buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16),
+                buffer.getInt(offset + 24),
+                buffer.getInt(offset + 28),
+                buffer.getInt(offset + 32),
+                Kind.values()[buffer.get(offset + 36)],
+                Outcome.values()[buffer.get(offset + 37)],
+                buffer.getLong(offset + 40));
+    }
+
+    private void rotate(long firstTimestamp) throws IOException
+    {
+        if (active != null)
+        {
+            active.force();
+            channel.close();
+        }
+        // Never reuse the name of an existing segment, even if one filled up within a millisecond
+        long name = segments.isEmpty() ? firstTimestamp : Math.max(firstTimestamp, segments.lastKey() + 1);
+        Path file = directory.resolve(SEGMENT_PREFIX + name + SEGMENT_SUFFIX);
+        mapSegment(file);
+        addSegment(name, file);
+        activeOrdinal = segmentFiles.size() - 1;
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed
+     */
+    private static MappedByteBuffer mapForReading(Path file) throws IOException
+    {
+        try (FileChannel segment = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+        }
+    }
+
+    private void mapSegment(Path file) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+    }
+
+    /**
+     * Group commit: one force covers every record appended since the previous one
+     */
+    private void force()
+    {
+        if (!dirty)
+        {
+            return;
+        }
+        MappedByteBuffer segment;
+        appendLock.lock();
+        try
+        {
+            dirty = false;
+            segment = active;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+        // Appends continue while the pages are being flushed
+        if (segment != null)
+        {
+            segment.force();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException
+    {
+        flusher.shutdown();
+        force();
+        appendLock.lock();
+        try
+        {
+            if (channel != null)
+            {
+                channel.close();
+            }
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+}
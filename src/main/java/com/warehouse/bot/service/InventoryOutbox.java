@@ -0,0 +1,238 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of stock and reserved writes accepted while the warehouse service was unreachable.
+ * Every entry is fsync'ed to warehouse.outbox.file before the operator is told it is queued, and
+ * entries are kept in arrival order per product. An entry keeps the idempotency key of the original
+ * attempt, so replaying a write that did reach the backend before the failure is not applied twice.
+ * Journal lines: "Q id kind productId warehouseId delta chatId key" and "D id" when done.
+ */
+@Component
+@Slf4j
+public class InventoryOutbox
+{
+
+    public record Entry(long id, InventoryAuditJournal.Kind kind, long productId, int warehouseId, int delta,
+                        long chatId, String idempotencyKey) {}
+
+    private final BotConfig botConfig;
+    private final AvailabilityLedger availabilityLedger;
+    // productId -> entries in arrival order; guarded by this
+    private final Map<Long, Deque<Entry>> pending = new LinkedHashMap<>();
+    private final Counter queued;
+    private final Counter replayed;
+    private long nextId;
+    private int backlog;
+    private FileChannel journal;
+
+    public InventoryOutbox(BotConfig botConfig, AvailabilityLedger availabilityLedger, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.availabilityLedger = availabilityLedger;
+        this.queued = Counter.builder("warehouse.outbox.queued")
+                .description("Writes queued because the warehouse service was unreachable")
+                .register(meterRegistry);
+        this.replayed = Counter.builder("warehouse.outbox.replayed")
+                .description("Queued writes delivered (or finally rejected) after the backend recovered")
+                .register(meterRegistry);
+        Gauge.builder("warehouse.outbox.backlog", this, InventoryOutbox::getBacklog)
+                .description("Queued writes waiting for replay")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Persist a write for later replay. A reserved delta arrives already held as pending in the ledger
+     * (AvailabilityLedger.hold) and stays pending until it is delivered or rejected.
+     */
+    public Entry enqueue(InventoryAuditJournal.Kind kind, long productId, int warehouseId, int delta,
+                         long chatId, String idempotencyKey)
+    {
+        Entry entry;
+        synchronized (this)
+        {
+            entry = new Entry(nextId++, kind, productId, warehouseId, delta, chatId, idempotencyKey);
+            append(String.format("Q %d %s %d %d %d %d %s", entry.id(), kind, productId, warehouseId, delta, chatId,
+                    idempotencyKey));
+            add(entry);
+        }
+        queued.increment();
+        return entry;
+    }
+
+    /**
+     * True while earlier writes of the product are still queued; new writes must queue behind them
+     */
+    public synchronized boolean hasPending(long productId)
+    {
+        return pending.containsKey(productId);
+    }
+
+    /**
+     * Oldest queued write of every product that has one
+     */
+    public synchronized List<Entry> heads()
+    {
+        List<Entry> heads = new ArrayList<>(pending.size());
+        pending.values().forEach(queue -> heads.add(queue.peekFirst()));
+        return heads;
+    }
+
+    /**
+     * The head write of its product was delivered or definitively rejected.
+     * A delivered reserved delta was already moved from pending to reserved by the write itself;
+     * a rejected one is released from pending here.
+     */
+    public void complete(Entry entry, boolean applied)
+    {
+        if (removeHead(entry))
+        {
+            replayed.increment();
+            if (!applied)
+            {
+                trackPendingReserved(entry, -1);
+            }
+        }
+    }
+
+    private synchronized boolean removeHead(Entry entry)
+    {
+        Deque<Entry> queue = pending.get(entry.productId());
+        if (queue == null || queue.peekFirst() == null || queue.peekFirst().id() != entry.id())
+        {
+            return false;
+        }
+        append("D " + entry.id());
+        queue.pollFirst();
+        if (queue.isEmpty())
+        {
+            pending.remove(entry.productId());
+        }
+        backlog--;
+        return true;
+    }
+
+    private void trackPendingReserved(Entry entry, int sign)
+    {
+        if (entry.kind() == InventoryAuditJournal.Kind.RESERVED)
+        {
+            if (sign > 0)
+            {
+                availabilityLedger.addPendingReserved(entry.productId(), entry.delta());
+            }
+            else
+            {
+                availabilityLedger.settlePendingReserved(entry.productId(), entry.delta());
+            }
+        }
+    }
+
+    public synchronized int getBacklog()
+    {
+        return backlog;
+    }
+
+    private void add(Entry entry)
+    {
+        pending.computeIfAbsent(entry.productId(), id -> new ArrayDeque<>()).addLast(entry);
+        backlog++;
+    }
+
+    private void append(String line)
+    {
+        try
+        {
+            journal.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            journal.force(false);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot write outbox: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reload entries that were queued but not delivered before the last stop, then compact the file
+     */
+    @PostConstruct
+    public synchronized void recover() throws IOException
+    {
+        Path file = Path.of(botConfig.getOutboxFile());
+        if (file.getParent() != null)
+        {
+            Files.createDirectories(file.getParent());
+        }
+
+        Map<Long, String[]> open = new LinkedHashMap<>();
+        if (Files.exists(file))
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+            {
+                String[] parts = line.split(" ");
+                if (parts[0].equals("Q") && parts.length == 8)
+                {
+                    open.put(Long.parseLong(parts[1]), parts);
+                }
+                else if (parts[0].equals("D") && parts.length == 2)
+                {
+                    open.remove(Long.parseLong(parts[1]));
+                }
+            }
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>();
+        open.values().forEach(parts -> lines.add(String.join(" ", parts)));
+        Files.write(compacted, lines, StandardCharsets.UTF_8);
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        long maxId = -1;
+        for (String[] parts : open.values())
+        {
+            Entry entry = new Entry(Long.parseLong(parts[1]), InventoryAuditJournal.Kind.valueOf(parts[2]),
+                    Long.parseLong(parts[3]), Integer.parseInt(parts[4]), Integer.parseInt(parts[5]),
+                    Long.parseLong(parts[6]), parts[7]);
+            maxId = Math.max(maxId, entry.id());
+            add(entry);
+            trackPendingReserved(entry, 1);
+        }
+        nextId = maxId + 1;
+        if (backlog > 0)
+        {
+            log.info("📮 {} queued inventory writes waiting for the warehouse service", backlog);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException
+    {
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-event sampling for high-volume log lines (received/sent messages, redeliveries).
+ * Writes, warnings and errors are not sampled and always go through.
+ * Also records how long each update spent logging, as measured by MeteredAppender.
+ */
+@Component
+public class LogSampler
+{
+
+    private final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final long sampleEvery;
+    private final Timer updateLogging;
+
+    public LogSampler(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.sampleEvery = Math.max(1, botConfig.getLogSampleEvery());
+        this.updateLogging = Timer.builder("bot.update.logging")
+                .description("Time an update handler spent handing log events to the logging pipeline")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns true for the first occurrence of the event and then for every sampleEvery-th one
+     */
+    public boolean sample(String event)
+    {
+        if (sampleEvery == 1)
+        {
+            return true;
+        }
+        long count = counts.computeIfAbsent(event, key -> new AtomicLong()).getAndIncrement();
+        return count % sampleEvery == 0;
+    }
+
+    public long getSampleEvery()
+    {
+        return sampleEvery;
+    }
+
+    public void recordUpdateCost(long nanos)
+    {
+        updateLogging.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
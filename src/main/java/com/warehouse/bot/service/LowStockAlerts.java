@@ -0,0 +1,170 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.ChatNotificationEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pushes a message to subscribed chats when a product's available quantity
+ * (total_quantity - num_reserved_goods - pending reservations) drops to the threshold.
+ * Driven by AvailabilityLedger change callbacks, so the cost is per change and the catalog is never scanned.
+ * Hysteresis: a product alerts once, and only re-arms after climbing to threshold + rearm margin.
+ * In cluster mode each instance alerts from its own ledger (see ProductWatches).
+ */
+@Component
+@Slf4j
+public class LowStockAlerts implements AvailabilityLedger.Listener
+{
+
+    private final BotConfig botConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Set<Long> subscribers = ConcurrentHashMap.newKeySet();
+    // Products currently below the threshold that have already alerted
+    private final Set<Long> low = ConcurrentHashMap.newKeySet();
+    private final Counter alerts;
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "low-stock-alerts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LowStockAlerts(BotConfig botConfig, ApplicationEventPublisher eventPublisher,
+                          AvailabilityLedger availabilityLedger, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.eventPublisher = eventPublisher;
+        this.alerts = Counter.builder("warehouse.alerts.low_stock")
+                .description("Low-stock crossings that were pushed to subscribed chats")
+                .register(meterRegistry);
+        availabilityLedger.addListener(this);
+    }
+
+    @PostConstruct
+    public void load()
+    {
+        Path file = Path.of(botConfig.getLowStockSubscribersFile());
+        if (!Files.exists(file))
+        {
+            return;
+        }
+        try
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+            {
+                if (!line.isBlank())
+                {
+                    subscribers.add(Long.parseLong(line.trim()));
+                }
+            }
+            log.info("🔔 Loaded {} low-stock alert subscribers", subscribers.size());
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            log.error("Error loading low-stock subscribers: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void quantitiesChanged(long productId, AvailabilityLedger.Snapshot before, AvailabilityLedger.Snapshot after)
+    {
+        int threshold = botConfig.getLowStockThreshold();
+        int available = after.available();
+        if (before == null)
+        {
+            // First sight of the product is a baseline, not a crossing
+            if (available <= threshold)
+            {
+                low.add(productId);
+            }
+            return;
+        }
+        if (available <= threshold)
+        {
+            if (low.add(productId))
+            {
+                alert(productId, available, threshold);
+            }
+        }
+        else if (available >= threshold + botConfig.getLowStockRearmMargin())
+        {
+            low.remove(productId);
+        }
+    }
+
+    private void alert(long productId, int available, int threshold)
+    {
+        alerts.increment();
+        if (subscribers.isEmpty())
+        {
+            return;
+        }
+        String text = String.format("⚠️ Low stock\n📦 Product ID: %d\n✅ Available: %d (threshold %d)",
+                productId, available, threshold);
+        // Called under the ledger's product lock: hand the sends to the notifier thread
+        notifier.execute(() ->
+        {
+            for (Long chatId : subscribers)
+            {
+                eventPublisher.publishEvent(new ChatNotificationEvent(chatId, text));
+            }
+        });
+    }
+
+    /**
+     * Subscribe or unsubscribe the chat, returns true when it is subscribed afterwards
+     */
+    public synchronized boolean toggle(Long chatId)
+    {
+        boolean subscribed = subscribers.add(chatId);
+        if (!subscribed)
+        {
+            subscribers.remove(chatId);
+        }
+        save();
+        return subscribed;
+    }
+
+    private void save()
+    {
+        Path file = Path.of(botConfig.getLowStockSubscribersFile());
+        try
+        {
+            if (file.getParent() != null)
+            {
+                Files.createDirectories(file.getParent());
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            List<String> lines = subscribers.stream().map(String::valueOf).toList();
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.error("Error saving low-stock subscribers: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        notifier.shutdown();
+    }
+}
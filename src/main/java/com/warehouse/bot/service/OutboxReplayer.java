@@ -0,0 +1,137 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.ChatNotificationEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers queued outbox writes once the warehouse service answers again.
+ * Products are replayed one head entry at a time, so each product's writes keep their order;
+ * the round stops at the first sign that the backend is still unreachable, overloaded or throttling
+ * (the failures RetryExecutor retries), while any other error rejects the entry so it cannot block the outbox.
+ */
+@Component
+@Slf4j
+public class OutboxReplayer
+{
+
+    private final InventoryOutbox inventoryOutbox;
+    private final WarehouseApiService warehouseApiService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BotConfig botConfig;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "outbox-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OutboxReplayer(InventoryOutbox inventoryOutbox, WarehouseApiService warehouseApiService,
+                          ApplicationEventPublisher eventPublisher, BotConfig botConfig)
+    {
+        this.inventoryOutbox = inventoryOutbox;
+        this.warehouseApiService = warehouseApiService;
+        this.eventPublisher = eventPublisher;
+        this.botConfig = botConfig;
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        long interval = botConfig.getOutboxReplayIntervalMillis();
+        scheduler.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void replay()
+    {
+        int delivered = 0;
+        long started = System.nanoTime();
+        try
+        {
+            List<InventoryOutbox.Entry> heads = inventoryOutbox.heads();
+            while (!heads.isEmpty())
+            {
+                for (InventoryOutbox.Entry entry : heads)
+                {
+                    if (!deliver(entry))
+                    {
+                        return;
+                    }
+                    delivered++;
+                }
+                heads = inventoryOutbox.heads();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            log.error("❌ Outbox replay failed: {}", e.getMessage());
+        }
+        finally
+        {
+            if (delivered > 0)
+            {
+                log.info("📮 Replayed {} queued writes in {} ms, {} left", delivered,
+                        (System.nanoTime() - started) / 1_000_000, inventoryOutbox.getBacklog());
+            }
+        }
+    }
+
+    /**
+     * Returns false when the backend is still unreachable and the round should stop
+     */
+    private boolean deliver(InventoryOutbox.Entry entry)
+    {
+        boolean stock = entry.kind() == InventoryAuditJournal.Kind.STOCK;
+        String outcome;
+        boolean applied = false;
+        try
+        {
+            if (stock)
+            {
+                warehouseApiService.applyStockChange(entry.productId(), entry.warehouseId(), entry.delta(),
+                        entry.idempotencyKey());
+            }
+            else
+            {
+                warehouseApiService.applyPendingReservedChange(entry.productId(), entry.delta(), entry.idempotencyKey());
+            }
+            applied = true;
+            outcome = String.format("✅ Queued %s change applied\n📦 Product ID: %d\n📊 Quantity change: %+d",
+                    stock ? "stock" : "reserved", entry.productId(), entry.delta());
+        }
+        catch (RuntimeException e)
+        {
+            if (RetryExecutor.isRetryableLater(e))
+            {
+                // Still unreachable or overloaded; keep the entry and retry next round
+                return false;
+            }
+            // The backend answered and refused the write (4xx or a 5xx other than 502/503/504);
+            // retrying would not change that
+            outcome = String.format("❌ Queued %s change for product %d was rejected: %s",
+                    stock ? "stock" : "reserved", entry.productId(), e.getMessage());
+        }
+
+        inventoryOutbox.complete(entry, applied);
+        if (entry.chatId() != 0)
+        {
+            eventPublisher.publishEvent(new ChatNotificationEvent(entry.chatId(), outcome));
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        scheduler.shutdownNow();
+    }
+}
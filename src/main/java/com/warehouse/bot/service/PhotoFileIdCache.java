@@ -0,0 +1,143 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent map of (photo path, content hash) -> Telegram file_id.
+ * Once a photo has been uploaded, later sends reference the file_id instead of re-uploading bytes.
+ */
+@Component
+@Slf4j
+public class PhotoFileIdCache
+{
+
+    private final BotConfig botConfig;
+    private final Map<String, String> fileIds = new ConcurrentHashMap<>();
+    // path -> hash, reused while size and mtime stay the same
+    private final Map<Path, HashedFile> hashes = new ConcurrentHashMap<>();
+
+    public PhotoFileIdCache(BotConfig botConfig)
+    {
+        this.botConfig = botConfig;
+    }
+
+    @PostConstruct
+    public void load()
+    {
+        Path file = Path.of(botConfig.getPhotoCacheFile());
+        if (!Files.exists(file))
+        {
+            return;
+        }
+        try
+        {
+            // Format: path \t hash \t file_id, later lines win
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines)
+            {
+                String[] parts = line.split("\t");
+                if (parts.length == 3)
+                {
+                    fileIds.put(key(parts[0], parts[1]), parts[2]);
+                }
+            }
+            log.info("📸 Loaded {} cached photo file_ids", fileIds.size());
+        }
+        catch (IOException e)
+        {
+            log.error("Error loading photo file_id cache: {}", e.getMessage());
+        }
+    }
+
+    public String getFileId(String photoPath, String contentHash)
+    {
+        return fileIds.get(key(photoPath, contentHash));
+    }
+
+    public void putFileId(String photoPath, String contentHash, String fileId)
+    {
+        if (fileId.equals(fileIds.put(key(photoPath, contentHash), fileId)))
+        {
+            return;
+        }
+        Path file = Path.of(botConfig.getPhotoCacheFile());
+        synchronized (this)
+        {
+            try
+            {
+                if (file.getParent() != null)
+                {
+                    Files.createDirectories(file.getParent());
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+                {
+                    writer.write(photoPath + "\t" + contentHash + "\t" + fileId);
+                    writer.newLine();
+                }
+            }
+            catch (IOException e)
+            {
+                log.error("Error persisting photo file_id: {}", e.getMessage());
+            }
+        }
+    }
+
+    public void evict(String photoPath, String contentHash)
+    {
+        fileIds.remove(key(photoPath, contentHash));
+    }
+
+    /**
+     * SHA-256 of the file, digested straight from a read-only mapping so the bytes are not copied onto the heap
+     */
+    public String contentHash(Path file) throws IOException
+    {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        HashedFile cached = hashes.get(file);
+        if (cached != null && cached.size == size && cached.modified == modified)
+        {
+            return cached.hash;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            digest.update(buffer);
+            String hash = HexFormat.of().formatHex(digest.digest());
+            hashes.put(file, new HashedFile(size, modified, hash));
+            return hash;
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String key(String photoPath, String contentHash)
+    {
+        return photoPath + "#" + contentHash;
+    }
+
+    private record HashedFile(long size, long modified, String hash) {}
+}
@@ -0,0 +1,88 @@
+package com.warehouse.bot.service;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A product category with its own attributes. Implementations are Spring beans and are picked up by
+ * CategoryRegistry, so a new category is one new class: no switch in WarehouseApiService or CommandHandler.
+ *
+ * @param <T> attributes model returned by the warehouse service for the category
+ */
+public interface ProductCategory<T>
+{
+
+    /**
+     * Cells of one row of a tabular import, by column name
+     */
+    interface Columns
+    {
+        /**
+         * Trimmed cell, null when empty or absent
+         */
+        String text(String column);
+
+        /**
+         * Throws IllegalArgumentException naming the column when it is empty or absent
+         */
+        String required(String column);
+
+        /**
+         * Required whole number; accepts XLSX doubles such as "500.0"
+         */
+        Integer integer(String column);
+
+        /**
+         * Optional whole number, null when empty
+         */
+        Integer optionalInteger(String column);
+
+        /**
+         * true/yes/1 or false/no/0, defaultValue when empty
+         */
+        Boolean bool(String column, boolean defaultValue);
+    }
+
+    /**
+     * category_name values the warehouse service uses for this category
+     */
+    Set<String> names();
+
+    /**
+     * category_name given to imported products that leave it empty
+     */
+    String primaryName();
+
+    /**
+     * SKU prefix before the first '-' identifying the category when the name is unknown, null if none
+     */
+    String skuPrefix();
+
+    /**
+     * Path of the attributes endpoint relative to the warehouse service URL, followed by the product id
+     */
+    String attributesPath();
+
+    Class<T> attributesType();
+
+    /**
+     * Attribute lines for the product card
+     */
+    String render(T attributes);
+
+    /**
+     * Attributes from the '|'-separated fields of a text command, in the order the category documents
+     */
+    T parse(String[] fields);
+
+    /**
+     * Attribute columns of a tabular import, in the order they follow the product columns in a file
+     * without a header row
+     */
+    List<String> columns();
+
+    /**
+     * Attributes from one import row; invalid values throw IllegalArgumentException naming the column
+     */
+    T fromColumns(Columns row);
+}
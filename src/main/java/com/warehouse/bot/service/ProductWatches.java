@@ -0,0 +1,302 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.ChatNotificationEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Product watches: chats subscribe to products and are told when stock or reserved counts change.
+ * Changes come from AvailabilityLedger callbacks (catalog responses and our own writes); the
+ * product -> chats index makes each change cost one map lookup, however many watches exist.
+ * Changes are coalesced per chat and product (first before, last after) and sent once per flush
+ * window as one message per chat. Subscriptions are kept in an append-only file compacted on startup.
+ * In cluster mode the ledger is per instance, so a chat only hears of writes made on the instance that
+ * owns it and of changes that instance's own reads bring in.
+ */
+@Component
+@Slf4j
+public class ProductWatches implements AvailabilityLedger.Listener
+{
+
+    private static final int MAX_LINES_PER_MESSAGE = 30;
+
+    private record Change(AvailabilityLedger.Snapshot first, AvailabilityLedger.Snapshot last)
+    {
+    }
+
+    private final BotConfig botConfig;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<Long, Set<Long>> chatsByProduct = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> productsByChat = new ConcurrentHashMap<>();
+    private final AtomicInteger watchCount = new AtomicInteger();
+    private final Object pendingLock = new Object();
+    // chat -> product -> coalesced change since the last flush
+    private Map<Long, Map<Long, Change>> pending = new HashMap<>();
+    private final Counter notifications;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "product-watch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel journal;
+
+    public ProductWatches(BotConfig botConfig, ApplicationEventPublisher eventPublisher,
+                          AvailabilityLedger availabilityLedger, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.eventPublisher = eventPublisher;
+        this.notifications = Counter.builder("bot.watch.notifications")
+                .description("Batched watch messages sent to chats")
+                .register(meterRegistry);
+        Gauge.builder("bot.watch.subscriptions", watchCount, AtomicInteger::get)
+                .description("Active product watches")
+                .register(meterRegistry);
+        availabilityLedger.addListener(this);
+    }
+
+    @PostConstruct
+    public synchronized void load() throws IOException
+    {
+        Path file = Path.of(botConfig.getWatchFile());
+        if (file.getParent() != null)
+        {
+            Files.createDirectories(file.getParent());
+        }
+
+        // Format: "W chatId productId" to watch, "U chatId productId" to unwatch, later lines win
+        if (Files.exists(file))
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+            {
+                String[] parts = line.split(" ");
+                if (parts.length != 3)
+                {
+                    continue;
+                }
+                long chatId = Long.parseLong(parts[1]);
+                long productId = Long.parseLong(parts[2]);
+                if (parts[0].equals("W"))
+                {
+                    index(chatId, productId);
+                }
+                else if (parts[0].equals("U"))
+                {
+                    unindex(chatId, productId);
+                }
+            }
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>();
+        productsByChat.forEach((chatId, products) -> products.forEach(productId -> lines.add("W " + chatId + " " + productId)));
+        Files.write(compacted, lines, StandardCharsets.UTF_8);
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (!lines.isEmpty())
+        {
+            log.info("👀 Loaded {} product watches", lines.size());
+        }
+
+        long window = botConfig.getWatchFlushMillis();
+        flusher.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the reply for the chat: confirmation, or why the watch was not added
+     */
+    public synchronized String watch(long chatId, long productId)
+    {
+        Set<Long> products = productsByChat.get(chatId);
+        if (products != null && products.contains(productId))
+        {
+            return String.format("👀 You are already watching product %d.", productId);
+        }
+        if (products != null && products.size() >= botConfig.getWatchMaxPerChat())
+        {
+            return String.format("❌ You can watch at most %d products. Use /unwatch <id> first.",
+                    botConfig.getWatchMaxPerChat());
+        }
+        append("W " + chatId + " " + productId);
+        index(chatId, productId);
+        return String.format("👀 Watching product %d. You will be notified when its stock or reserved quantity changes.",
+                productId);
+    }
+
+    public synchronized String unwatch(long chatId, long productId)
+    {
+        Set<Long> products = productsByChat.get(chatId);
+        if (products == null || !products.contains(productId))
+        {
+            return String.format("You are not watching product %d.", productId);
+        }
+        append("U " + chatId + " " + productId);
+        unindex(chatId, productId);
+        return String.format("🔕 Stopped watching product %d.", productId);
+    }
+
+    public Set<Long> watchedBy(long chatId)
+    {
+        Set<Long> products = productsByChat.get(chatId);
+        return products != null ? new TreeSet<>(products) : Set.of();
+    }
+
+    private void index(long chatId, long productId)
+    {
+        if (productsByChat.computeIfAbsent(chatId, id -> ConcurrentHashMap.newKeySet()).add(productId))
+        {
+            chatsByProduct.computeIfAbsent(productId, id -> ConcurrentHashMap.newKeySet()).add(chatId);
+            watchCount.incrementAndGet();
+        }
+    }
+
+    private void unindex(long chatId, long productId)
+    {
+        Set<Long> products = productsByChat.get(chatId);
+        if (products == null || !products.remove(productId))
+        {
+            return;
+        }
+        if (products.isEmpty())
+        {
+            productsByChat.remove(chatId);
+        }
+        Set<Long> chats = chatsByProduct.get(productId);
+        if (chats != null)
+        {
+            chats.remove(chatId);
+            if (chats.isEmpty())
+            {
+                chatsByProduct.remove(productId);
+            }
+        }
+        watchCount.decrementAndGet();
+    }
+
+    private void append(String line)
+    {
+        try
+        {
+            journal.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot write product watches: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void quantitiesChanged(long productId, AvailabilityLedger.Snapshot before, AvailabilityLedger.Snapshot after)
+    {
+        Set<Long> chats = chatsByProduct.get(productId);
+        if (chats == null || before == null)
+        {
+            return;
+        }
+        synchronized (pendingLock)
+        {
+            for (Long chatId : chats)
+            {
+                pending.computeIfAbsent(chatId, id -> new LinkedHashMap<>())
+                        .merge(productId, new Change(before, after), (older, newer) -> new Change(older.first(), newer.last()));
+            }
+        }
+    }
+
+    void flush()
+    {
+        Map<Long, Map<Long, Change>> batch;
+        synchronized (pendingLock)
+        {
+            if (pending.isEmpty())
+            {
+                return;
+            }
+            batch = pending;
+            pending = new HashMap<>();
+        }
+
+        try
+        {
+            batch.forEach((chatId, changes) ->
+            {
+                List<String> lines = new ArrayList<>();
+                changes.forEach((productId, change) ->
+                {
+                    // Changes that cancelled out within the window are not worth a message
+                    if (!change.first().equals(change.last()))
+                    {
+                        lines.add(formatChange(productId, change));
+                    }
+                });
+                for (int from = 0; from < lines.size(); from += MAX_LINES_PER_MESSAGE)
+                {
+                    List<String> chunk = lines.subList(from, Math.min(lines.size(), from + MAX_LINES_PER_MESSAGE));
+                    eventPublisher.publishEvent(new ChatNotificationEvent(chatId,
+                            "👀 Watched products changed:\n\n" + String.join("\n", chunk)));
+                    notifications.increment();
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            log.error("❌ Product watch flush failed: {}", e.getMessage());
+        }
+    }
+
+    private static String formatChange(long productId, Change change)
+    {
+        AvailabilityLedger.Snapshot first = change.first();
+        AvailabilityLedger.Snapshot last = change.last();
+        List<String> parts = new ArrayList<>();
+        if (first.total() != last.total())
+        {
+            parts.add(String.format("🏠 Quantity %d → %d", first.total(), last.total()));
+        }
+        if (first.reserved() != last.reserved())
+        {
+            parts.add(String.format("📦 Reserved %d → %d", first.reserved(), last.reserved()));
+        }
+        parts.add(String.format("✅ Available %d", last.available()));
+        return String.format("📦 Product %d: %s", productId, String.join(", ", parts));
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException
+    {
+        flusher.shutdownNow();
+        flush();
+        if (journal != null)
+        {
+            journal.close();
+        }
+    }
+}
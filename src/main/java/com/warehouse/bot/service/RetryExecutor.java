@@ -0,0 +1,187 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries warehouse calls that are safe to repeat: GETs and PATCHes carrying an idempotency key.
+ * Only transport failures, 429 and 502/503/504 are retried, with full-jitter exponential backoff.
+ * A retry is attempted only while the deadline budget of the current update (or of the call itself
+ * outside update handling) leaves room for the backoff plus one more attempt, and every attempt's
+ * response timeout is cut to the time left until that deadline (at least MIN_ATTEMPT_TIMEOUT_MILLIS),
+ * so a slow attempt cannot run past it.
+ */
+@Component
+@Slf4j
+public class RetryExecutor
+{
+
+    private static final long MIN_ATTEMPT_TIMEOUT_MILLIS = 250;
+    // Deadline of the call running on this thread; the HTTP request factory reads it per request
+    private static final ThreadLocal<Long> ATTEMPT_DEADLINE = new ThreadLocal<>();
+
+    private final BotConfig botConfig;
+    private final Counter retried;
+    private final Counter exhausted;
+    private final Counter outOfBudget;
+
+    public RetryExecutor(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.retried = Counter.builder("warehouse.http.retry")
+                .tag("outcome", "retried")
+                .description("Warehouse calls retried after a transient failure")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("warehouse.http.retry")
+                .tag("outcome", "exhausted")
+                .description("Warehouse calls that failed after the last allowed attempt")
+                .register(meterRegistry);
+        this.outOfBudget = Counter.builder("warehouse.http.retry")
+                .tag("outcome", "out_of_budget")
+                .description("Retries skipped because the update deadline would be missed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a call that may safely be repeated
+     */
+    public <T> T call(String operation, Supplier<T> attempt)
+    {
+        UpdateContext context = UpdateContext.current();
+        long deadline = context != null
+                ? context.getDeadlineNanos()
+                : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(botConfig.getUpdateDeadlineMillis());
+
+        for (int attemptNumber = 1; ; attemptNumber++)
+        {
+            long started = System.nanoTime();
+            try
+            {
+                return withAttemptDeadline(deadline, attempt);
+            }
+            catch (RuntimeException e)
+            {
+                if (!isTransient(e))
+                {
+                    throw e;
+                }
+                if (attemptNumber >= botConfig.getRetryMaxAttempts())
+                {
+                    exhausted.increment();
+                    throw e;
+                }
+
+                long backoff = backoffMillis(attemptNumber);
+                long lastAttempt = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (backoff + lastAttempt > remaining)
+                {
+                    outOfBudget.increment();
+                    throw e;
+                }
+
+                retried.increment();
+                log.warn("🔁 {} failed ({}), retry {} in {} ms", operation, e.getMessage(), attemptNumber, backoff);
+                sleep(backoff);
+            }
+        }
+    }
+
+    public static Long currentAttemptDeadline()
+    {
+        return ATTEMPT_DEADLINE.get();
+    }
+
+    /**
+     * Run an attempt under the given deadline; hedged reads use it to carry the caller's deadline
+     * to their worker threads
+     */
+    public static <T> T withAttemptDeadline(Long deadline, Supplier<T> attempt)
+    {
+        Long previous = ATTEMPT_DEADLINE.get();
+        ATTEMPT_DEADLINE.set(deadline);
+        try
+        {
+            return attempt.get();
+        }
+        finally
+        {
+            if (previous == null)
+            {
+                ATTEMPT_DEADLINE.remove();
+            }
+            else
+            {
+                ATTEMPT_DEADLINE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Response timeout for a request sent on this thread now, or null outside a retried call
+     */
+    public static Long attemptTimeoutMillis()
+    {
+        Long deadline = ATTEMPT_DEADLINE.get();
+        if (deadline == null)
+        {
+            return null;
+        }
+        return Math.max(MIN_ATTEMPT_TIMEOUT_MILLIS, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Full jitter: uniform in [0, min(cap, base * 2^(attempt-1))]
+     */
+    private long backoffMillis(int attemptNumber)
+    {
+        long ceiling = Math.min(botConfig.getRetryMaxBackoffMillis(),
+                botConfig.getRetryBaseBackoffMillis() << Math.min(attemptNumber - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Failures that may succeed when tried again later: the transient set retried here plus limiter
+     * rejections. Queued writes are kept for replay on exactly these; anything else is a refusal.
+     */
+    public static boolean isRetryableLater(Exception e)
+    {
+        return isTransient(e) || e instanceof AdaptiveConcurrencyLimiter.RejectedException;
+    }
+
+    private static boolean isTransient(Exception e)
+    {
+        if (e instanceof ResourceAccessException)
+        {
+            return true;
+        }
+        if (e instanceof HttpStatusCodeException status)
+        {
+            int code = status.getStatusCode().value();
+            return code == 429 || code == 502 || code == 503 || code == 504;
+        }
+        return false;
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.model.ServerAttributes;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Servers. The catalog has used both "Server" and "Servers" as the category name.
+ */
+@Component
+public class ServerCategory implements ProductCategory<ServerAttributes>
+{
+
+    @Override
+    public Set<String> names()
+    {
+        return Set.of("Server", "Servers");
+    }
+
+    @Override
+    public String primaryName()
+    {
+        return "Server";
+    }
+
+    @Override
+    public String skuPrefix()
+    {
+        return null;
+    }
+
+    @Override
+    public String attributesPath()
+    {
+        return "/products/servers/";
+    }
+
+    @Override
+    public Class<ServerAttributes> attributesType()
+    {
+        return ServerAttributes.class;
+    }
+
+    @Override
+    public String render(ServerAttributes server)
+    {
+        // Build storage info
+        String storageInfo = "";
+        if (server.getHdd_size_gb() != null && server.getSsd_size_gb() != null)
+        {
+            storageInfo = String.format("HDD: %d GB, SSD: %d GB",
+                server.getHdd_size_gb(), server.getSsd_size_gb());
+        }
+        else if (server.getHdd_size_gb() != null)
+        {
+            storageInfo = String.format("HDD: %d GB", server.getHdd_size_gb());
+        }
+        else if (server.getSsd_size_gb() != null)
+        {
+            storageInfo = String.format("SSD: %d GB", server.getSsd_size_gb());
+        }
+
+        return String.format(
+            "• RAM: %d GB\n• CPU: %s (%d cores)\n• %s\n• Form Factor: %s\n• Manufacturer: %s",
+            server.getRam_gb(),
+            server.getCpu_model(),
+            server.getCpu_cores(),
+            storageInfo,
+            server.getForm_factor(),
+            server.getManufacturer()
+        );
+    }
+
+    /**
+     * ram_gb|cpu_model|cpu_cores|hdd_size_gb|ssd_size_gb|form_factor|manufacturer, empty sizes for none
+     */
+    @Override
+    public ServerAttributes parse(String[] fields)
+    {
+        ServerAttributes attributes = new ServerAttributes();
+        attributes.setRam_gb(Integer.parseInt(fields[0]));
+        attributes.setCpu_model(fields[1]);
+        attributes.setCpu_cores(Integer.parseInt(fields[2]));
+        attributes.setHdd_size_gb(fields[3].isBlank() ? null : Integer.parseInt(fields[3]));
+        attributes.setSsd_size_gb(fields[4].isBlank() ? null : Integer.parseInt(fields[4]));
+        attributes.setForm_factor(fields[5]);
+        attributes.setManufacturer(fields[6]);
+        return attributes;
+    }
+
+    @Override
+    public List<String> columns()
+    {
+        return List.of("ram_gb", "cpu_model", "cpu_cores", "hdd_size_gb", "ssd_size_gb", "form_factor", "manufacturer");
+    }
+
+    @Override
+    public ServerAttributes fromColumns(Columns row)
+    {
+        ServerAttributes attributes = new ServerAttributes();
+        attributes.setRam_gb(row.integer("ram_gb"));
+        attributes.setCpu_model(row.required("cpu_model"));
+        attributes.setCpu_cores(row.integer("cpu_cores"));
+        attributes.setHdd_size_gb(row.optionalInteger("hdd_size_gb"));
+        attributes.setSsd_size_gb(row.optionalInteger("ssd_size_gb"));
+        attributes.setForm_factor(row.text("form_factor"));
+        attributes.setManufacturer(row.text("manufacturer"));
+        return attributes;
+    }
+}
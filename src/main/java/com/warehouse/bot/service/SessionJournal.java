@@ -0,0 +1,327 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.ChatSession;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped append log of chat sessions.
+ * Every change to a session appends a compact binary record; the latest record per chat wins and an
+ * empty record is a tombstone. When the mapped region fills up, the live sessions are rewritten into
+ * a fresh file (compaction). Appends run on a background thread so handlers never wait for I/O.
+ *
+ * Record layout: int payloadLength | int crc32(payload) | payload
+ * Payload: long chatId | byte fieldMask | [short len + UTF-8 state] | [long stockProductId]
+ *          | [int stockWarehouseId] | [long reservedProductId]
+ */
+@Component
+@Slf4j
+public class SessionJournal
+{
+
+    private static final int RECORD_HEADER = 8;
+    private static final int HAS_STATE = 1;
+    private static final int HAS_STOCK_PRODUCT = 2;
+    private static final int HAS_STOCK_WAREHOUSE = 4;
+    private static final int HAS_RESERVED_PRODUCT = 8;
+    private static final long FORCE_INTERVAL_MS = 1000;
+
+    private final Path file;
+    private int capacity;
+
+    // Owned by the writer thread after load()
+    private final Map<Long, ChatSession> live = new HashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "session-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private boolean dirty;
+
+    public SessionJournal(BotConfig botConfig)
+    {
+        this.file = Path.of(botConfig.getSessionJournalFile());
+        this.capacity = botConfig.getSessionJournalCapacity();
+    }
+
+    /**
+     * Map the journal, rebuild the live sessions and compact. Called once at startup.
+     */
+    public synchronized Map<Long, ChatSession> load()
+    {
+        long started = System.nanoTime();
+        try
+        {
+            if (file.getParent() != null)
+            {
+                Files.createDirectories(file.getParent());
+            }
+            if (Files.exists(file))
+            {
+                try (FileChannel existing = FileChannel.open(file, StandardOpenOption.READ))
+                {
+                    MappedByteBuffer mapped = existing.map(FileChannel.MapMode.READ_ONLY, 0, existing.size());
+                    readRecords(mapped);
+                }
+            }
+            compact();
+            writer.scheduleWithFixedDelay(this::force, FORCE_INTERVAL_MS, FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        catch (IOException e)
+        {
+            log.error("❌ Session journal unavailable, sessions will not survive a restart: {}", e.getMessage());
+        }
+
+        log.info("💾 Restored {} chat sessions in {} ms", live.size(), (System.nanoTime() - started) / 1_000_000);
+        Map<Long, ChatSession> restored = new HashMap<>();
+        live.forEach((chatId, session) -> restored.put(chatId, new ChatSession(session)));
+        return restored;
+    }
+
+    /**
+     * Journal the current state of a chat; a null or empty session removes it.
+     * The session is copied on the caller's thread and written asynchronously.
+     */
+    public void record(long chatId, ChatSession session)
+    {
+        if (writer.isShutdown())
+        {
+            return;
+        }
+        ChatSession snapshot = session == null || session.isEmpty() ? null : new ChatSession(session);
+        writer.execute(() -> append(chatId, snapshot));
+    }
+
+    /**
+     * Wait until every recorded change is written and forced to disk
+     */
+    public void flush(long timeoutMillis)
+    {
+        try
+        {
+            writer.submit(this::force).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            log.error("❌ Session journal flush failed: {}", e.getMessage());
+        }
+    }
+
+    private void append(long chatId, ChatSession session)
+    {
+        if (buffer == null)
+        {
+            return;
+        }
+        if (session == null)
+        {
+            if (live.remove(chatId) == null)
+            {
+                return; // nothing to delete
+            }
+        }
+        else
+        {
+            live.put(chatId, session);
+        }
+
+        try
+        {
+            byte[] payload = encode(chatId, session);
+            if (buffer.remaining() < RECORD_HEADER + payload.length)
+            {
+                // Rewriting the live set also persists this change
+                compact();
+                return;
+            }
+            writeRecord(buffer, payload);
+            dirty = true;
+        }
+        catch (IOException e)
+        {
+            log.error("❌ Failed to journal session for chatId {}: {}", chatId, e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite only the live sessions into a new mapped file and swap it in
+     */
+    private void compact() throws IOException
+    {
+        int needed = RECORD_HEADER;
+        Map<Long, byte[]> encoded = new HashMap<>();
+        for (Map.Entry<Long, ChatSession> entry : live.entrySet())
+        {
+            byte[] payload = encode(entry.getKey(), entry.getValue());
+            encoded.put(entry.getKey(), payload);
+            needed += RECORD_HEADER + payload.length;
+        }
+        // Keep at least half of the region free for appends
+        while (needed * 2 > capacity)
+        {
+            capacity *= 2;
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MappedByteBuffer region = target.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            for (byte[] payload : encoded.values())
+            {
+                writeRecord(region, payload);
+            }
+            region.force();
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (channel != null)
+        {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.position(needed - RECORD_HEADER);
+        dirty = false;
+    }
+
+    private void readRecords(ByteBuffer mapped)
+    {
+        CRC32 crc = new CRC32();
+        while (mapped.remaining() >= RECORD_HEADER)
+        {
+            int length = mapped.getInt();
+            int checksum = mapped.getInt();
+            if (length <= 0 || length > mapped.remaining())
+            {
+                break; // end of written region
+            }
+            byte[] payload = new byte[length];
+            mapped.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum)
+            {
+                log.warn("Session journal truncated at a torn record");
+                break;
+            }
+            decode(ByteBuffer.wrap(payload));
+        }
+    }
+
+    private void decode(ByteBuffer payload)
+    {
+        long chatId = payload.getLong();
+        int mask = payload.get();
+        if (mask == 0)
+        {
+            live.remove(chatId);
+            return;
+        }
+        ChatSession session = new ChatSession();
+        if ((mask & HAS_STATE) != 0)
+        {
+            byte[] state = new byte[payload.getShort()];
+            payload.get(state);
+            session.setState(new String(state, StandardCharsets.UTF_8));
+        }
+        if ((mask & HAS_STOCK_PRODUCT) != 0) session.setStockProductId(payload.getLong());
+        if ((mask & HAS_STOCK_WAREHOUSE) != 0) session.setStockWarehouseId(payload.getInt());
+        if ((mask & HAS_RESERVED_PRODUCT) != 0) session.setReservedProductId(payload.getLong());
+        live.put(chatId, session);
+    }
+
+    private static byte[] encode(long chatId, ChatSession session)
+    {
+        byte[] state = session != null && session.getState() != null
+                ? session.getState().getBytes(StandardCharsets.UTF_8) : null;
+        ByteBuffer payload = ByteBuffer.allocate(8 + 1 + (state != null ? 2 + state.length : 0) + 8 + 4 + 8);
+        payload.putLong(chatId);
+
+        int mask = 0;
+        if (session != null)
+        {
+            if (state != null) mask |= HAS_STATE;
+            if (session.getStockProductId() != null) mask |= HAS_STOCK_PRODUCT;
+            if (session.getStockWarehouseId() != null) mask |= HAS_STOCK_WAREHOUSE;
+            if (session.getReservedProductId() != null) mask |= HAS_RESERVED_PRODUCT;
+        }
+        payload.put((byte) mask);
+        if ((mask & HAS_STATE) != 0)
+        {
+            payload.putShort((short) state.length);
+            payload.put(state);
+        }
+        if ((mask & HAS_STOCK_PRODUCT) != 0) payload.putLong(session.getStockProductId());
+        if ((mask & HAS_STOCK_WAREHOUSE) != 0) payload.putInt(session.getStockWarehouseId());
+        if ((mask & HAS_RESERVED_PRODUCT) != 0) payload.putLong(session.getReservedProductId());
+
+        byte[] bytes = new byte[payload.position()];
+        payload.flip();
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private static void writeRecord(ByteBuffer region, byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        region.putInt(payload.length);
+        region.putInt((int) crc.getValue());
+        region.put(payload);
+    }
+
+    private void force()
+    {
+        if (dirty && buffer != null)
+        {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        flush(5000);
+        writer.shutdown();
+        try
+        {
+            if (channel != null)
+            {
+                channel.close();
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Error closing session journal: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.warehouse.bot.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Checks a secret presented in a request header against the configured one
+ */
+public final class SharedSecret
+{
+
+    private SharedSecret()
+    {
+    }
+
+    /**
+     * Constant-time comparison; a blank configured secret never matches
+     */
+    public static boolean matches(String expected, String presented)
+    {
+        if (presented == null || expected == null || expected.isBlank())
+        {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
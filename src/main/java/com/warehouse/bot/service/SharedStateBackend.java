@@ -0,0 +1,34 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.model.ChatSession;
+
+import java.util.function.BiFunction;
+
+/**
+ * Storage for state that must outlive a single update: chat sessions and cached backend responses.
+ * In multi-instance mode a chat may move to another instance when the ring changes, so the handler
+ * loads the session at the start of an update and saves it at the end instead of keeping it in a
+ * local map. Implementations are selected with bot.state.backend.
+ */
+public interface SharedStateBackend
+{
+
+    /**
+     * Returns the stored session or null when the chat is not in any flow
+     */
+    ChatSession loadSession(long chatId);
+
+    /**
+     * Store the session; a null or empty session removes it
+     */
+    void saveSession(long chatId, ChatSession session);
+
+    Object getCached(String key);
+
+    void putCached(String key, Object value);
+
+    /**
+     * Replace every cached value, e.g. to mark all entries stale after a write
+     */
+    void updateAllCached(BiFunction<String, Object, Object> function);
+}
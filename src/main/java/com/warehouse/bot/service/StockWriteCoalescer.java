@@ -0,0 +1,475 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.ChatNotificationEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind aggregation of stock and reserved deltas.
+ * Deltas for the same (product, warehouse) arriving within warehouse.coalesce.window-ms are merged
+ * and sent as one PATCH. Every accepted delta is fsync'ed to a local journal before the operator is
+ * acknowledged, and journaled deltas without a commit record are replayed after a restart.
+ * Each operator is notified when the merged write containing their delta commits. A merged write that
+ * fails transiently is handed to the InventoryOutbox instead of being committed.
+ * Before its PATCH is sent a merged write is sealed: its idempotency key and contribution ids are journaled
+ * and it never takes another delta, so a write that may already have reached the backend is only ever
+ * resent as exactly the same batch, whether it is retried in this process or recovered after a restart.
+ */
+@Service
+@Slf4j
+public class StockWriteCoalescer
+{
+
+    public enum Kind { STOCK, RESERVED }
+
+    private record DeltaKey(Kind kind, long productId, int warehouseId) {}
+
+    private record Contribution(long id, long chatId, int delta) {}
+
+    private static final class PendingDelta
+    {
+        private final List<Contribution> contributions = new ArrayList<>();
+        private int sum;
+        // Set once the batch is sealed; from then on it is only ever sent under this key
+        private String idempotencyKey;
+    }
+
+    private final WarehouseApiService warehouseApiService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BotConfig botConfig;
+    private final AvailabilityLedger availabilityLedger;
+    private final InventoryOutbox inventoryOutbox;
+
+    private final Map<DeltaKey, PendingDelta> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private FileChannel journal;
+
+    public StockWriteCoalescer(WarehouseApiService warehouseApiService, ApplicationEventPublisher eventPublisher,
+                               BotConfig botConfig, AvailabilityLedger availabilityLedger,
+                               InventoryOutbox inventoryOutbox)
+    {
+        this.availabilityLedger = availabilityLedger;
+        this.inventoryOutbox = inventoryOutbox;
+        this.warehouseApiService = warehouseApiService;
+        this.eventPublisher = eventPublisher;
+        this.botConfig = botConfig;
+    }
+
+    public boolean isEnabled()
+    {
+        return botConfig.isCoalesceEnabled();
+    }
+
+    public String submitStock(Long chatId, Long productId, Integer warehouseId, Integer quantityChange)
+    {
+        submit(new DeltaKey(Kind.STOCK, productId, warehouseId), chatId, quantityChange);
+        return String.format("⏳ Stock change queued\n📦 Product ID: %d\n🏭 Warehouse: %d\n📊 Quantity change: %+d\n\n" +
+                "You will get a confirmation when it is written.", productId, warehouseId, quantityChange);
+    }
+
+    public String submitReserved(Long chatId, Long productId, Integer quantityChange)
+    {
+        // Held as pending until the merged write commits it
+        String rejection = availabilityLedger.hold(productId, quantityChange);
+        if (rejection != null)
+        {
+            return rejection;
+        }
+        try
+        {
+            submit(new DeltaKey(Kind.RESERVED, productId, 0), chatId, quantityChange);
+        }
+        catch (IllegalStateException e)
+        {
+            availabilityLedger.settlePendingReserved(productId, quantityChange);
+            throw e;
+        }
+        return String.format("⏳ Reserved change queued\n📦 Product ID: %d\n📊 Quantity change: %+d\n\n" +
+                "You will get a confirmation when it is written.", productId, quantityChange);
+    }
+
+    private void submit(DeltaKey key, long chatId, int delta)
+    {
+        Contribution contribution = new Contribution(nextId.getAndIncrement(), chatId, delta);
+        // Durable before acknowledged
+        appendJournal(String.format("A %d %s %d %d %d %d", contribution.id(), key.kind(),
+                key.productId(), key.warehouseId(), delta, chatId));
+        enqueue(key, contribution);
+    }
+
+    private void enqueue(DeltaKey key, Contribution contribution)
+    {
+        boolean[] first = new boolean[1];
+        pending.compute(key, (k, current) ->
+        {
+            if (current == null)
+            {
+                current = new PendingDelta();
+                first[0] = true;
+            }
+            current.contributions.add(contribution);
+            current.sum += contribution.delta();
+            return current;
+        });
+        if (first[0])
+        {
+            scheduler.schedule(() -> flush(key), botConfig.getCoalesceWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(DeltaKey key)
+    {
+        PendingDelta merged = pending.remove(key);
+        if (merged != null)
+        {
+            send(key, merged);
+        }
+    }
+
+    /**
+     * Send a batch that no longer accepts deltas. When it can neither be applied nor handed to the
+     * outbox it is retried on its own one window later, never merged with newer deltas.
+     */
+    private void send(DeltaKey key, PendingDelta merged)
+    {
+        String label = key.kind() == Kind.STOCK ? "Stock" : "Reserved";
+        String outcome = String.format("✅ %s change written for product %d%s: merged %d change(s), net %+d",
+                label, key.productId(), key.kind() == Kind.STOCK ? " (warehouse " + key.warehouseId() + ")" : "",
+                merged.contributions.size(), merged.sum);
+        if (merged.sum != 0)
+        {
+            if (merged.idempotencyKey == null)
+            {
+                try
+                {
+                    seal(key, merged);
+                }
+                catch (IllegalStateException e)
+                {
+                    log.error("❌ Cannot seal merged {} write for product {}: {}", key.kind(), key.productId(), e.getMessage());
+                    retryBatchLater(key, merged);
+                    return;
+                }
+            }
+            String idempotencyKey = merged.idempotencyKey;
+            // Earlier writes of the product waiting for replay must not be overtaken
+            boolean retryLater = inventoryOutbox.hasPending(key.productId());
+            if (!retryLater)
+            {
+                try
+                {
+                    if (key.kind() == Kind.STOCK)
+                    {
+                        warehouseApiService.applyStockChange(key.productId(), key.warehouseId(), merged.sum, idempotencyKey);
+                    }
+                    else
+                    {
+                        // Moves the sum from pending to reserved in the ledger
+                        warehouseApiService.applyPendingReservedChange(key.productId(), merged.sum, idempotencyKey);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    if (isRejection(e))
+                    {
+                        log.error("❌ Merged {} write for product {} was rejected: {}", key.kind(), key.productId(), e.getMessage());
+                        if (key.kind() == Kind.RESERVED)
+                        {
+                            availabilityLedger.settlePendingReserved(key.productId(), merged.sum);
+                        }
+                        outcome = String.format("❌ %s change for product %d failed: %s", label, key.productId(), e.getMessage());
+                    }
+                    else
+                    {
+                        log.warn("⚠️ Merged {} write for product {} failed, queueing it for retry: {}",
+                                key.kind(), key.productId(), e.getMessage());
+                        retryLater = true;
+                    }
+                }
+            }
+            if (retryLater)
+            {
+                try
+                {
+                    outcome = handOff(key, merged, idempotencyKey);
+                }
+                catch (IllegalStateException e)
+                {
+                    // Still journaled without commit records; resend the same sealed batch next window
+                    log.error("❌ Cannot queue merged {} write for product {}: {}", key.kind(), key.productId(), e.getMessage());
+                    retryBatchLater(key, merged);
+                    return;
+                }
+            }
+        }
+
+        // Only written once the delta is applied, definitively rejected or owned by the outbox
+        for (Contribution contribution : merged.contributions)
+        {
+            appendJournal("C " + contribution.id());
+        }
+        notifyOperators(merged, outcome);
+    }
+
+    private void retryBatchLater(DeltaKey key, PendingDelta merged)
+    {
+        try
+        {
+            scheduler.schedule(() -> send(key, merged), botConfig.getCoalesceWindowMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down: the batch stays in the journal and is resent after the restart
+            log.warn("⚠️ Merged {} write for product {} left for recovery after restart", key.kind(), key.productId());
+        }
+    }
+
+    /**
+     * Journal the batch's key and contribution ids before its first PATCH, so recovery resends
+     * exactly this batch under this key
+     */
+    private void seal(DeltaKey key, PendingDelta merged)
+    {
+        String idempotencyKey = idempotencyKey(key, merged);
+        StringBuilder line = new StringBuilder("B ").append(idempotencyKey).append(' ');
+        for (int i = 0; i < merged.contributions.size(); i++)
+        {
+            line.append(i == 0 ? "" : ",").append(merged.contributions.get(i).id());
+        }
+        appendJournal(line.toString());
+        merged.idempotencyKey = idempotencyKey;
+    }
+
+    /**
+     * The backend answered and refused the write; retrying would not change that.
+     * 429, 5xx, transport errors and limiter rejections are transient.
+     */
+    private static boolean isRejection(RuntimeException e)
+    {
+        return e instanceof IllegalStateException
+                || (e instanceof HttpClientErrorException && !(e instanceof HttpClientErrorException.TooManyRequests));
+    }
+
+    /**
+     * Move a merged write to the outbox under the same idempotency key; a reserved sum stays pending
+     * in the ledger until the replay commits or releases it. The replay confirms to the operator
+     * when only one contributed.
+     */
+    private String handOff(DeltaKey key, PendingDelta merged, String idempotencyKey)
+    {
+        long chatId = merged.contributions.stream().map(Contribution::chatId).distinct().count() == 1
+                ? merged.contributions.get(0).chatId()
+                : 0L;
+        inventoryOutbox.enqueue(InventoryAuditJournal.Kind.valueOf(key.kind().name()), key.productId(),
+                key.warehouseId(), merged.sum, chatId, idempotencyKey);
+        return String.format("⏳ %s change for product %d is queued until the warehouse service answers: " +
+                "merged %d change(s), net %+d", key.kind() == Kind.STOCK ? "Stock" : "Reserved",
+                key.productId(), merged.contributions.size(), merged.sum);
+    }
+
+    /**
+     * Derived from the journaled contribution ids: a merged write replayed after a crash between
+     * the PATCH and its commit records carries the same key and is not applied twice
+     */
+    private static String idempotencyKey(DeltaKey key, PendingDelta merged)
+    {
+        List<Contribution> contributions = merged.contributions;
+        return String.format("merge-%s-%d-%d-%d-%d", key.kind(), key.productId(), key.warehouseId(),
+                contributions.get(0).id(), contributions.get(contributions.size() - 1).id());
+    }
+
+    /**
+     * One acknowledgement per operator, listing their own deltas
+     */
+    private void notifyOperators(PendingDelta merged, String outcome)
+    {
+        Map<Long, List<Integer>> byChat = new LinkedHashMap<>();
+        for (Contribution contribution : merged.contributions)
+        {
+            byChat.computeIfAbsent(contribution.chatId(), chat -> new ArrayList<>()).add(contribution.delta());
+        }
+        byChat.forEach((chatId, deltas) -> eventPublisher.publishEvent(new ChatNotificationEvent(chatId,
+                outcome + "\nYour change(s): " + deltas.stream().map(d -> String.format("%+d", d)).toList())));
+    }
+
+    private synchronized void appendJournal(String line)
+    {
+        try
+        {
+            journal.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            journal.force(false);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot write delta journal: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replay deltas that were acknowledged but never committed, then compact the journal.
+     * A sealed batch may already have been applied, so it is resent alone under its journaled key;
+     * open deltas were never sent and are merged like new ones. A batch with some commit records was
+     * settled before the crash, and its remaining deltas are only marked committed.
+     */
+    @PostConstruct
+    public void recover() throws IOException
+    {
+        Path file = Path.of(botConfig.getCoalesceJournal());
+        if (file.getParent() != null)
+        {
+            Files.createDirectories(file.getParent());
+        }
+
+        Map<Long, String[]> uncommitted = new LinkedHashMap<>();
+        List<String[]> sealed = new ArrayList<>();
+        if (Files.exists(file))
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+            {
+                String[] parts = line.split(" ");
+                if (parts[0].equals("A") && parts.length == 7)
+                {
+                    uncommitted.put(Long.parseLong(parts[1]), parts);
+                }
+                else if (parts[0].equals("B") && parts.length == 3)
+                {
+                    sealed.add(parts);
+                }
+                else if (parts[0].equals("C") && parts.length == 2)
+                {
+                    uncommitted.remove(Long.parseLong(parts[1]));
+                }
+            }
+        }
+
+        Map<String[], List<String[]>> batches = new LinkedHashMap<>();
+        for (String[] batch : sealed)
+        {
+            List<String[]> members = new ArrayList<>();
+            boolean settled = false;
+            for (String id : batch[2].split(","))
+            {
+                String[] parts = uncommitted.remove(Long.parseLong(id));
+                if (parts == null)
+                {
+                    settled = true;
+                }
+                else
+                {
+                    members.add(parts);
+                }
+            }
+            if (!settled && !members.isEmpty())
+            {
+                batches.put(batch, members);
+            }
+        }
+
+        // Rewrite with only the open deltas and their seals so the journal does not grow forever
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>();
+        batches.forEach((batch, members) ->
+        {
+            members.forEach(parts -> lines.add(String.join(" ", parts)));
+            lines.add(String.join(" ", batch));
+        });
+        uncommitted.values().forEach(parts -> lines.add(String.join(" ", parts)));
+        Files.write(compacted, lines, StandardCharsets.UTF_8);
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        long maxId = 0;
+        for (Map.Entry<String[], List<String[]>> batch : batches.entrySet())
+        {
+            PendingDelta merged = new PendingDelta();
+            merged.idempotencyKey = batch.getKey()[1];
+            DeltaKey key = null;
+            for (String[] parts : batch.getValue())
+            {
+                key = recoveredKey(parts);
+                Contribution contribution = recoveredContribution(parts);
+                maxId = Math.max(maxId, contribution.id());
+                merged.contributions.add(contribution);
+                merged.sum += contribution.delta();
+            }
+            DeltaKey batchKey = key;
+            if (batchKey.kind() == Kind.RESERVED)
+            {
+                availabilityLedger.addPendingReserved(batchKey.productId(), merged.sum);
+            }
+            scheduler.execute(() -> send(batchKey, merged));
+        }
+        for (String[] parts : uncommitted.values())
+        {
+            DeltaKey key = recoveredKey(parts);
+            Contribution contribution = recoveredContribution(parts);
+            maxId = Math.max(maxId, contribution.id());
+            if (key.kind() == Kind.RESERVED)
+            {
+                availabilityLedger.addPendingReserved(key.productId(), contribution.delta());
+            }
+            enqueue(key, contribution);
+        }
+        // Ids double as idempotency keys, so never reuse ids of writes committed before the restart
+        nextId.set(Math.max(maxId + 1, System.currentTimeMillis() * 1000));
+        if (!batches.isEmpty() || !uncommitted.isEmpty())
+        {
+            log.info("🔁 Replaying {} sealed batches and {} open stock/reserved deltas", batches.size(), uncommitted.size());
+        }
+    }
+
+    private static DeltaKey recoveredKey(String[] parts)
+    {
+        return new DeltaKey(Kind.valueOf(parts[2]), Long.parseLong(parts[3]), Integer.parseInt(parts[4]));
+    }
+
+    private static Contribution recoveredContribution(String[] parts)
+    {
+        return new Contribution(Long.parseLong(parts[1]), Long.parseLong(parts[6]), Integer.parseInt(parts[5]));
+    }
+
+    /**
+     * Send every pending merged write now instead of waiting for its window
+     */
+    public void flushAll()
+    {
+        for (DeltaKey key : new ArrayList<>(pending.keySet()))
+        {
+            flush(key);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException
+    {
+        scheduler.shutdownNow();
+        flushAll();
+        journal.close();
+    }
+}
@@ -0,0 +1,323 @@
+package com.warehouse.bot.service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Row-by-row reader for uploaded CSV and XLSX files.
+ * Rows are handed to the consumer as they are read; only XLSX shared strings are kept in memory.
+ */
+public final class TabularFileReader
+{
+
+    private static final String DEFAULT_SHEET_PART = "xl/worksheets/sheet1.xml";
+    private static final String RELATIONSHIPS_NAMESPACE =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    @FunctionalInterface
+    public interface RowConsumer
+    {
+        /**
+         * @param rowNumber 1-based row number as the operator sees it in the file
+         */
+        void accept(int rowNumber, List<String> cells);
+    }
+
+    private TabularFileReader()
+    {
+    }
+
+    public static boolean isSupported(String fileName)
+    {
+        String lower = fileName.toLowerCase();
+        return lower.endsWith(".csv") || lower.endsWith(".xlsx");
+    }
+
+    public static void read(Path file, String fileName, RowConsumer consumer) throws IOException
+    {
+        if (fileName.toLowerCase().endsWith(".xlsx"))
+        {
+            readXlsx(file, consumer);
+        }
+        else
+        {
+            readCsv(file, consumer);
+        }
+    }
+
+    private static void readCsv(Path file, RowConsumer consumer) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            int rowNumber = 0;
+            char delimiter = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                rowNumber++;
+                if (rowNumber == 1 && line.startsWith("\uFEFF"))
+                {
+                    line = line.substring(1); // Excel UTF-8 BOM
+                }
+                if (line.isBlank())
+                {
+                    continue;
+                }
+                if (delimiter == 0)
+                {
+                    delimiter = line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+                }
+                consumer.accept(rowNumber, splitCsvLine(line, delimiter));
+            }
+        }
+    }
+
+    /**
+     * Split one CSV line, honouring double-quoted fields and "" escapes
+     */
+    static List<String> splitCsvLine(String line, char delimiter)
+    {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quoted)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    cell.append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    cell.append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == delimiter)
+            {
+                cells.add(cell.toString().trim());
+                cell.setLength(0);
+            }
+            else
+            {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString().trim());
+        return cells;
+    }
+
+    /**
+     * Stream the first worksheet with StAX. XLSX is a zip of XML parts: cell values are either
+     * inline or indexes into xl/sharedStrings.xml, which is loaded first. The first worksheet is the
+     * first sheet listed in xl/workbook.xml; its part name comes from the workbook relationships,
+     * since sheetN.xml numbering no longer matches the tab order once sheets are moved or deleted.
+     */
+    private static void readXlsx(Path file, RowConsumer consumer) throws IOException
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try (ZipFile zip = new ZipFile(file.toFile()))
+        {
+            List<String> sharedStrings = new ArrayList<>();
+            ZipEntry sharedEntry = zip.getEntry("xl/sharedStrings.xml");
+            if (sharedEntry != null)
+            {
+                try (InputStream in = zip.getInputStream(sharedEntry))
+                {
+                    readSharedStrings(factory.createXMLStreamReader(in), sharedStrings);
+                }
+            }
+
+            ZipEntry sheetEntry = zip.getEntry(firstSheetPart(zip, factory));
+            if (sheetEntry == null)
+            {
+                throw new IOException("Workbook has no first worksheet");
+            }
+            try (InputStream in = zip.getInputStream(sheetEntry))
+            {
+                readSheet(factory.createXMLStreamReader(in), sharedStrings, consumer);
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException("Malformed XLSX: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Zip entry name of the first sheet in tab order; xl/worksheets/sheet1.xml when the workbook
+     * parts are missing
+     */
+    private static String firstSheetPart(ZipFile zip, XMLInputFactory factory) throws IOException, XMLStreamException
+    {
+        ZipEntry workbook = zip.getEntry("xl/workbook.xml");
+        ZipEntry relationships = zip.getEntry("xl/_rels/workbook.xml.rels");
+        if (workbook == null || relationships == null)
+        {
+            return DEFAULT_SHEET_PART;
+        }
+
+        String relationshipId = null;
+        try (InputStream in = zip.getInputStream(workbook))
+        {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            while (relationshipId == null && xml.hasNext())
+            {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("sheet"))
+                {
+                    relationshipId = xml.getAttributeValue(RELATIONSHIPS_NAMESPACE, "id");
+                }
+            }
+            xml.close();
+        }
+        if (relationshipId == null)
+        {
+            return DEFAULT_SHEET_PART;
+        }
+
+        try (InputStream in = zip.getInputStream(relationships))
+        {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            while (xml.hasNext())
+            {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("Relationship")
+                        && relationshipId.equals(xml.getAttributeValue(null, "Id")))
+                {
+                    String target = xml.getAttributeValue(null, "Target");
+                    xml.close();
+                    if (target == null)
+                    {
+                        break;
+                    }
+                    // Targets are relative to xl/ unless absolute within the package
+                    return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+                }
+            }
+            xml.close();
+        }
+        throw new IOException("Workbook relationship " + relationshipId + " of the first sheet is missing");
+    }
+
+    private static void readSharedStrings(XMLStreamReader xml, List<String> sharedStrings) throws XMLStreamException
+    {
+        StringBuilder text = null;
+        while (xml.hasNext())
+        {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("si"))
+            {
+                text = new StringBuilder();
+            }
+            else if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("t") && text != null)
+            {
+                text.append(xml.getElementText());
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("si") && text != null)
+            {
+                sharedStrings.add(text.toString());
+                text = null;
+            }
+        }
+        xml.close();
+    }
+
+    private static void readSheet(XMLStreamReader xml, List<String> sharedStrings, RowConsumer consumer)
+            throws XMLStreamException
+    {
+        List<String> cells = null;
+        int rowNumber = 0;
+        int column = 0;
+        String cellType = null;
+
+        while (xml.hasNext())
+        {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                switch (xml.getLocalName())
+                {
+                    case "row":
+                        cells = new ArrayList<>();
+                        String r = xml.getAttributeValue(null, "r");
+                        rowNumber = r != null ? Integer.parseInt(r) : rowNumber + 1;
+                        break;
+                    case "c":
+                        cellType = xml.getAttributeValue(null, "t");
+                        String ref = xml.getAttributeValue(null, "r");
+                        column = ref != null ? columnIndex(ref) : (cells != null ? cells.size() : 0);
+                        break;
+                    case "v":
+                    case "t":
+                        if (cells != null)
+                        {
+                            String value = xml.getElementText();
+                            if ("s".equals(cellType))
+                            {
+                                value = sharedStrings.get(Integer.parseInt(value.trim()));
+                            }
+                            else if ("b".equals(cellType))
+                            {
+                                value = "1".equals(value) ? "true" : "false";
+                            }
+                            while (cells.size() < column)
+                            {
+                                cells.add("");
+                            }
+                            cells.add(value.trim());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("row") && cells != null)
+            {
+                if (!cells.isEmpty())
+                {
+                    consumer.accept(rowNumber, cells);
+                }
+                cells = null;
+            }
+        }
+        xml.close();
+    }
+
+    /**
+     * "C12" -> 2
+     */
+    private static int columnIndex(String cellReference)
+    {
+        int index = 0;
+        for (int i = 0; i < cellReference.length() && Character.isLetter(cellReference.charAt(i)); i++)
+        {
+            index = index * 26 + (Character.toUpperCase(cellReference.charAt(i)) - 'A' + 1);
+        }
+        return index - 1;
+    }
+}
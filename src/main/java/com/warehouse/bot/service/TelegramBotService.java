@@ -1,16 +1,44 @@
 package com.warehouse.bot.service;
 
 import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.config.MeteredAppender;
 import com.warehouse.bot.handler.CommandHandler;
+import com.warehouse.bot.model.BotResponse;
+import com.warehouse.bot.model.ChatNotificationEvent;
+import com.warehouse.bot.model.ExportRequest;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Document;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -22,17 +50,271 @@ public class TelegramBotService extends TelegramLongPollingBot
 
     private final BotConfig botConfig;
     private final CommandHandler commandHandler;
+    private final PhotoFileIdCache photoFileIdCache;
+    private final ThermocupImportService thermocupImportService;
+    private final CatalogExportService catalogExportService;
+    private final UpdateDispatcher updateDispatcher;
+    private final ChatShardRing shardRing;
+    private final ClusterUpdateForwarder clusterUpdateForwarder;
+    private final UpdateIdDeduplicator updateIdDeduplicator;
+    private final ChatRateLimiter chatRateLimiter;
+    private final LogSampler logSampler;
+    private final ChatRegistry chatRegistry;
+    private final BroadcastService broadcastService;
+    private final TelegramSendLimiter sendLimiter;
+    private final AtomicBoolean firstUpdateHandled = new AtomicBoolean();
 
-    public TelegramBotService(BotConfig botConfig, CommandHandler commandHandler)
+    // Telegram allows roughly one edit per second per chat
+    private static final long PROGRESS_EDIT_INTERVAL_MS = 1500;
+    private static final int MAX_REPORTED_ERRORS = 30;
+    private static final String BUSY_MESSAGE = "⏳ The bot is busy with stock updates right now. Please try browsing again in a moment.";
+    private static final String OWNER_UNAVAILABLE_MESSAGE = "⏳ The bot cannot reach your session right now. Please try again in a moment.";
+    private static final long FORWARD_RETRY_MILLIS = 100;
+    private static final long FORWARD_RETRY_MAX_MILLIS = 1000;
+
+    public TelegramBotService(BotConfig botConfig, CommandHandler commandHandler, PhotoFileIdCache photoFileIdCache,
+                              ThermocupImportService thermocupImportService, CatalogExportService catalogExportService,
+                              UpdateDispatcher updateDispatcher, ChatShardRing shardRing,
+                              ClusterUpdateForwarder clusterUpdateForwarder, UpdateIdDeduplicator updateIdDeduplicator,
+                              ChatRateLimiter chatRateLimiter, LogSampler logSampler,
+                              ChatRegistry chatRegistry, BroadcastService broadcastService,
+                              TelegramSendLimiter sendLimiter)
     {
         super(botConfig.getBotToken());
         this.botConfig = botConfig;
         this.commandHandler = commandHandler;
+        this.photoFileIdCache = photoFileIdCache;
+        this.thermocupImportService = thermocupImportService;
+        this.catalogExportService = catalogExportService;
+        this.updateDispatcher = updateDispatcher;
+        this.shardRing = shardRing;
+        this.clusterUpdateForwarder = clusterUpdateForwarder;
+        this.updateIdDeduplicator = updateIdDeduplicator;
+        this.chatRateLimiter = chatRateLimiter;
+        this.logSampler = logSampler;
+        this.chatRegistry = chatRegistry;
+        this.broadcastService = broadcastService;
+        this.sendLimiter = sendLimiter;
+        broadcastService.attachSender((chatId, text) -> execute(createMessage(chatId, text)));
         log.info("🤖 Telegram Bot Service initialized with bot: {}", botConfig.getBotUsername());
     }
 
+    /**
+     * Hands the update to the dispatcher so updates of one chat stay ordered
+     * and shutdown can wait for handlers that are still running.
+     * In cluster mode updates of chats owned by another instance are forwarded there; chats are
+     * registered and broadcast commands answered here, since the polling instance sees every chat.
+     */
     @Override
     public void onUpdateReceived(Update update)
+    {
+        // The reply deadline starts when the update arrives, not when a worker picks it up
+        long deadline = updateDeadline();
+        Long chatId = chatIdOf(update);
+        if (chatId == null)
+        {
+            return;
+        }
+        if (!updateIdDeduplicator.firstDelivery(update.getUpdateId()))
+        {
+            if (logSampler.sample("redelivered"))
+            {
+                log.info("🔁 Skipping redelivered update {} (chatId: {}, sampled 1/{})",
+                        update.getUpdateId(), chatId, logSampler.getSampleEvery());
+            }
+            return;
+        }
+        chatRegistry.register(chatId);
+        if (isBroadcastCommand(update))
+        {
+            dispatch(chatId, update, false, () -> handleBroadcastCommand(chatId, update.getMessage().getText()));
+            return;
+        }
+        String owner = shardRing.ownerOf(chatId);
+        boolean local = shardRing.isLocal(chatId);
+        Runnable handler = local
+                ? () -> processUpdate(update, deadline)
+                : () -> forwardToOwner(owner, update, chatId, deadline);
+        dispatch(chatId, update, local, handler);
+    }
+
+    /**
+     * @param owned true when the handler works on this instance's flow state for the chat; only then
+     *              is the update re-ranked by that state once the chat's earlier updates have run
+     */
+    private UpdateDispatcher.Outcome dispatch(Long chatId, Update update, boolean owned, Runnable handler)
+    {
+        Supplier<UpdateDispatcher.Priority> rerank = owned && update.hasMessage() && update.getMessage().hasText()
+                ? () -> commandHandler.rerank(update.getMessage().getText(), chatId)
+                : null;
+        UpdateDispatcher.Outcome outcome = updateDispatcher.dispatch(chatId, priorityOf(update), rerank, handler);
+        if (outcome == UpdateDispatcher.Outcome.SHED)
+        {
+            log.warn("🚦 Shedding browsing update {} (chatId: {})", update.getUpdateId(), chatId);
+            replyBusy(chatId, update, BUSY_MESSAGE);
+        }
+        else if (outcome == UpdateDispatcher.Outcome.CLOSED)
+        {
+            log.warn("⏹️ Dropping update {} received during shutdown", update.getUpdateId());
+        }
+        return outcome;
+    }
+
+    /**
+     * Shed updates are answered on the polling thread, so the reply never waits for a send slot:
+     * when none is free right now the chat simply gets no busy notice
+     */
+    private void replyBusy(Long chatId, Update update, String message)
+    {
+        if (update.hasCallbackQuery())
+        {
+            answerCallback(update.getCallbackQuery().getId(), message);
+        }
+        else if (sendLimiter.tryAcquire())
+        {
+            try
+            {
+                execute(createMessage(chatId, message));
+            }
+            catch (TelegramApiException e)
+            {
+                log.error("❌ Failed to send busy reply to chatId {}: {}", chatId, e.getMessage());
+            }
+        }
+        else if (logSampler.sample("busy-dropped"))
+        {
+            log.info("🚦 No send slot free, busy reply to chatId {} dropped (sampled 1/{})",
+                    chatId, logSampler.getSampleEvery());
+        }
+    }
+
+    /**
+     * From the update alone: it runs on the polling thread, possibly for a chat owned elsewhere
+     */
+    private UpdateDispatcher.Priority priorityOf(Update update)
+    {
+        if (update.hasMessage() && update.getMessage().hasText())
+        {
+            return commandHandler.classify(update.getMessage().getText());
+        }
+        if (update.hasMessage() && update.getMessage().hasDocument())
+        {
+            return UpdateDispatcher.Priority.HIGH; // import upload
+        }
+        if (update.hasCallbackQuery())
+        {
+            return UpdateDispatcher.Priority.LOW; // pagination
+        }
+        return UpdateDispatcher.Priority.NORMAL;
+    }
+
+    /**
+     * Update forwarded by the polling instance for a chat this instance owns
+     */
+    public boolean acceptForwarded(Update update)
+    {
+        long deadline = updateDeadline();
+        Long chatId = chatIdOf(update);
+        if (chatId == null || !updateIdDeduplicator.firstDelivery(update.getUpdateId()))
+        {
+            return chatId != null; // already handled here, nothing for the sender to retry
+        }
+        // A shed update was already answered with a busy reply from here
+        return dispatch(chatId, update, true, () -> processUpdate(update, deadline)) != UpdateDispatcher.Outcome.CLOSED;
+    }
+
+    /**
+     * Only the owner has the chat's flow state, so the update is never handled here. An unreachable owner
+     * is retried with backoff until the update's deadline (the owner drops redeliveries by update id);
+     * after that the chat is asked to try again.
+     */
+    private void forwardToOwner(String owner, Update update, Long chatId, long deadline)
+    {
+        long backoffMillis = FORWARD_RETRY_MILLIS;
+        while (!clusterUpdateForwarder.forward(owner, update))
+        {
+            if (TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) <= backoffMillis)
+            {
+                log.warn("🚦 Owner '{}' unreachable, answering update {} as busy (chatId: {})",
+                        owner, update.getUpdateId(), chatId);
+                replyBusy(chatId, update, OWNER_UNAVAILABLE_MESSAGE);
+                return;
+            }
+            try
+            {
+                Thread.sleep(backoffMillis);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, FORWARD_RETRY_MAX_MILLIS);
+        }
+    }
+
+    private static boolean isBroadcastCommand(Update update)
+    {
+        return update.hasMessage() && update.getMessage().hasText()
+                && update.getMessage().getText().startsWith("/broadcast");
+    }
+
+    /**
+     * Stateless admin commands; they never touch the chat's flow state, so the polling instance answers
+     * them without forwarding
+     */
+    private void handleBroadcastCommand(Long chatId, String message)
+    {
+        if (!broadcastService.isAdmin(chatId))
+        {
+            sendMessage(chatId, "❌ Broadcasts are limited to administrator chats.");
+        }
+        else if (message.equals("/broadcast_status"))
+        {
+            sendMessage(chatId, broadcastService.status());
+        }
+        else
+        {
+            sendMessage(chatId, broadcastService.start(chatId, message.substring("/broadcast".length()).trim()));
+        }
+    }
+
+    private static Long chatIdOf(Update update)
+    {
+        if (update.hasMessage())
+        {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null)
+        {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    private long updateDeadline()
+    {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(botConfig.getUpdateDeadlineMillis());
+    }
+
+    private void processUpdate(Update update, long deadline)
+    {
+        Long chatId = chatIdOf(update);
+        UpdateContext.open(update.getUpdateId(), chatId, deadline);
+        // Drop whatever this worker logged before the update so only its own cost is recorded
+        MeteredAppender.drainThreadNanos();
+        try
+        {
+            handleUpdate(update);
+        }
+        finally
+        {
+            logSampler.recordUpdateCost(MeteredAppender.drainThreadNanos());
+            UpdateContext.close();
+        }
+    }
+
+    private void handleUpdate(Update update)
     {
         if (update.hasMessage() && update.getMessage().hasText())
         {
@@ -40,13 +322,49 @@ public class TelegramBotService extends TelegramLongPollingBot
             Long chatId = update.getMessage().getChatId();
             String userName = update.getMessage().getFrom().getUserName();
 
-            log.info("📨 Received message: '{}' from @{} (chatId: {})", messageText, userName, chatId);
+            boolean sampled = logSampler.sample("message");
+            if (sampled)
+            {
+                log.info("📨 Received message: '{}' from @{} (chatId: {}, sampled 1/{})",
+                        messageText, userName, chatId, logSampler.getSampleEvery());
+            }
+            long receivedAt = System.nanoTime();
+
+            long waitMillis = chatRateLimiter.acquire(chatId, messageText);
+            if (waitMillis > 0)
+            {
+                sendMessage(chatId, slowDownMessage(waitMillis));
+                return;
+            }
 
             try
             {
-                String responseText = commandHandler.handleCommand(messageText, chatId);
-                sendMessageWithKeyboard(chatId, responseText, messageText);
-                log.info("✅ Sent response to @{} (chatId: {})", userName, chatId);
+                BotResponse response = commandHandler.handleMessage(messageText, chatId);
+                if (response.getPhotoPath() != null)
+                {
+                    sendPhotoWithKeyboard(chatId, response, messageText);
+                }
+                else if (response.getExport() != null)
+                {
+                    sendMessageWithKeyboard(chatId, response.getText(), messageText);
+                    sendCatalogExport(chatId, response.getExport());
+                }
+                else if (response.getInlineKeyboard() != null)
+                {
+                    sendMessage(chatId, response.getText(), response.getInlineKeyboard());
+                }
+                else
+                {
+                    sendMessageWithKeyboard(chatId, response.getText(), messageText);
+                }
+                if (sampled)
+                {
+                    log.info("✅ Sent response to @{} (chatId: {})", userName, chatId);
+                }
+                if (firstUpdateHandled.compareAndSet(false, true))
+                {
+                    log.info("⏱️ First update handled in {} ms", (System.nanoTime() - receivedAt) / 1_000_000);
+                }
             }
             catch (Exception e)
             {
@@ -54,6 +372,234 @@ public class TelegramBotService extends TelegramLongPollingBot
                 sendMessage(chatId, "❌ An error occurred while processing your request. Please try again.");
             }
         }
+        else if (update.hasMessage() && update.getMessage().hasDocument())
+        {
+            handleDocument(update.getMessage().getChatId(), update.getMessage().getDocument());
+        }
+        else if (update.hasCallbackQuery())
+        {
+            handleCallbackQuery(update.getCallbackQuery());
+        }
+    }
+
+    /**
+     * Uploaded CSV/XLSX for a bulk thermocup import. The file is validated up front,
+     * then rows are created in the background while a progress message is edited in place.
+     */
+    private void handleDocument(Long chatId, Document document)
+    {
+        String fileName = document.getFileName() != null ? document.getFileName() : "";
+        if (!commandHandler.acceptImportDocument(chatId))
+        {
+            sendMessage(chatId, "📎 To import products choose \"Import thermal mugs from file\" first.");
+            return;
+        }
+        if (!TabularFileReader.isSupported(fileName))
+        {
+            sendMessageWithKeyboard(chatId, "❌ Unsupported file type. Please send a .csv or .xlsx file.", "/start");
+            return;
+        }
+
+        java.io.File downloaded = null;
+        try
+        {
+            GetFile getFile = new GetFile();
+            getFile.setFileId(document.getFileId());
+            downloaded = downloadFile(execute(getFile));
+
+            ThermocupImportService.ImportPlan plan = thermocupImportService.parse(downloaded.toPath(), fileName);
+            if (plan.rows().isEmpty())
+            {
+                sendMessageWithKeyboard(chatId, formatImportSummary(
+                        new ThermocupImportService.ImportResult(plan.errors().size(), 0, plan.errors())), "/start");
+                return;
+            }
+
+            sendLimiter.acquire();
+            Message progress = execute(createMessage(chatId, String.format(
+                    "⏳ Importing %d rows (%d invalid rows skipped)...", plan.rows().size(), plan.errors().size())));
+            AtomicLong lastEdit = new AtomicLong();
+
+            thermocupImportService.run(plan, (done, failed, total) ->
+            {
+                long now = System.currentTimeMillis();
+                long previous = lastEdit.get();
+                if (done < total && (now - previous < PROGRESS_EDIT_INTERVAL_MS || !lastEdit.compareAndSet(previous, now)))
+                {
+                    return;
+                }
+                editMessage(chatId, progress.getMessageId(),
+                        String.format("⏳ Importing... %d/%d rows done, %d failed", done, total, failed));
+            }).whenComplete((result, error) ->
+            {
+                if (error != null)
+                {
+                    log.error("❌ Import failed for chatId {}: {}", chatId, error.getMessage());
+                    sendMessageWithKeyboard(chatId, "❌ Import failed: " + error.getMessage(), "/start");
+                }
+                else
+                {
+                    sendMessageWithKeyboard(chatId, formatImportSummary(result), "/start");
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            log.error("❌ Error importing file from chatId {}: {}", chatId, e.getMessage());
+            sendMessageWithKeyboard(chatId, "❌ Could not read the file: " + e.getMessage(), "/start");
+        }
+        finally
+        {
+            // The plan holds parsed rows, the downloaded copy is no longer needed
+            if (downloaded != null && !downloaded.delete())
+            {
+                downloaded.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Build the export file in the background and deliver it as a document
+     */
+    private void sendCatalogExport(Long chatId, ExportRequest request)
+    {
+        catalogExportService.export(request).whenComplete((export, error) ->
+        {
+            if (error != null)
+            {
+                log.error("❌ Catalog export failed for chatId {}: {}", chatId, error.getMessage());
+                sendMessage(chatId, "❌ Catalog export failed. Please try again.");
+                return;
+            }
+
+            SendDocument document = new SendDocument();
+            document.setChatId(chatId.toString());
+            document.setDocument(new InputFile(export.path().toFile(), export.fileName()));
+            document.setCaption(String.format("📤 Catalog export: %d products", export.products()));
+            try
+            {
+                sendLimiter.acquire();
+                execute(document);
+            }
+            catch (TelegramApiException e)
+            {
+                log.error("❌ Failed to send catalog export to chatId {}: {}", chatId, e.getMessage());
+            }
+            finally
+            {
+                try
+                {
+                    Files.deleteIfExists(export.path());
+                }
+                catch (IOException e)
+                {
+                    log.warn("Could not delete export file {}: {}", export.path(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    private String formatImportSummary(ThermocupImportService.ImportResult result)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("📥 Import finished\n✅ Created: %d\n❌ Failed: %d\n📄 Rows: %d",
+                result.created(), result.errors().size(), result.total()));
+
+        if (!result.errors().isEmpty())
+        {
+            sb.append("\n\nFailed rows:\n");
+            result.errors().stream()
+                    .limit(MAX_REPORTED_ERRORS)
+                    .forEach(error -> sb.append("• Row ").append(error.rowNumber())
+                            .append(": ").append(error.reason()).append("\n"));
+            if (result.errors().size() > MAX_REPORTED_ERRORS)
+            {
+                sb.append(String.format("... and %d more", result.errors().size() - MAX_REPORTED_ERRORS));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void editMessage(Long chatId, Integer messageId, String text)
+    {
+        editMessage(chatId, messageId, text, null);
+    }
+
+    private void editMessage(Long chatId, Integer messageId, String text, InlineKeyboardMarkup keyboard)
+    {
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId.toString());
+        edit.setMessageId(messageId);
+        edit.setText(text);
+        edit.setReplyMarkup(keyboard);
+        try
+        {
+            sendLimiter.acquire();
+            execute(edit);
+        }
+        catch (TelegramApiException e)
+        {
+            // e.g. "message is not modified" when the current page button is pressed again
+            log.debug("Message {} in chatId {} not edited: {}", messageId, chatId, e.getMessage());
+        }
+    }
+
+    /**
+     * Deliver messages that are not direct replies, e.g. write-behind acknowledgements
+     */
+    @EventListener
+    public void onChatNotification(ChatNotificationEvent event)
+    {
+        sendMessage(event.getChatId(), event.getText());
+    }
+
+    /**
+     * Inline keyboard press: edit the original message in place instead of sending a new one
+     */
+    private void handleCallbackQuery(CallbackQuery callbackQuery)
+    {
+        Long chatId = callbackQuery.getMessage().getChatId();
+        Integer messageId = callbackQuery.getMessage().getMessageId();
+
+        String data = callbackQuery.getData() != null ? callbackQuery.getData() : "";
+        long waitMillis = chatRateLimiter.acquire(chatId, data.split(":", 2)[0] + ":");
+        BotResponse response;
+        if (waitMillis > 0)
+        {
+            response = new BotResponse();
+            response.setNotice(slowDownMessage(waitMillis));
+        }
+        else
+        {
+            response = commandHandler.handleCallback(callbackQuery.getData(), chatId);
+        }
+
+        if (response.getText() != null)
+        {
+            editMessage(chatId, messageId, response.getText(), response.getInlineKeyboard());
+        }
+
+        answerCallback(callbackQuery.getId(), response.getNotice());
+    }
+
+    private void answerCallback(String callbackQueryId, String notice)
+    {
+        AnswerCallbackQuery answer = new AnswerCallbackQuery();
+        answer.setCallbackQueryId(callbackQueryId);
+        answer.setText(notice);
+        try
+        {
+            execute(answer);
+        }
+        catch (TelegramApiException e)
+        {
+            log.error("❌ Failed to answer callback query {}: {}", callbackQueryId, e.getMessage());
+        }
+    }
+
+    private static String slowDownMessage(long waitMillis)
+    {
+        return String.format("🐢 Slow down, please. Try again in %d s.", Math.max(1, (waitMillis + 999) / 1000));
     }
 
     /**
@@ -71,6 +617,7 @@ public class TelegramBotService extends TelegramLongPollingBot
         
         try
         {
+            sendLimiter.acquire();
             execute(message);
         }
         catch (TelegramApiException e)
@@ -79,6 +626,101 @@ public class TelegramBotService extends TelegramLongPollingBot
         }
     }
 
+    /**
+     * Send a product photo with caption. A cached Telegram file_id is reused when the
+     * same image was uploaded before; otherwise the file is streamed from disk and the
+     * returned file_id is remembered. Falls back to text when the file is not available.
+     */
+    private void sendPhotoWithKeyboard(Long chatId, BotResponse response, String userMessage)
+    {
+        Path file = photoFile(response.getPhotoPath());
+        if (file == null)
+        {
+            sendMessageWithKeyboard(chatId, response.getText(), userMessage);
+            return;
+        }
+
+        try
+        {
+            String photoPath = response.getPhotoPath();
+            String hash = photoFileIdCache.contentHash(file);
+            String fileId = photoFileIdCache.getFileId(photoPath, hash);
+
+            if (fileId != null)
+            {
+                try
+                {
+                    sendLimiter.acquire();
+                    execute(createSendPhoto(chatId, new InputFile(fileId), response.getText(), userMessage));
+                    return;
+                }
+                catch (TelegramApiException e)
+                {
+                    // file_id no longer valid for this bot, upload the bytes again
+                    log.warn("Cached file_id rejected for {}: {}", photoPath, e.getMessage());
+                    photoFileIdCache.evict(photoPath, hash);
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                 InputStream in = Channels.newInputStream(channel))
+            {
+                InputFile upload = new InputFile(in, file.getFileName().toString());
+                sendLimiter.acquire();
+                Message sent = execute(createSendPhoto(chatId, upload, response.getText(), userMessage));
+                if (sent.getPhoto() != null && !sent.getPhoto().isEmpty())
+                {
+                    // Telegram returns every generated size, the last one is the original resolution
+                    String uploadedId = sent.getPhoto().get(sent.getPhoto().size() - 1).getFileId();
+                    photoFileIdCache.putFileId(photoPath, hash, uploadedId);
+                }
+            }
+        }
+        catch (IOException | TelegramApiException e)
+        {
+            log.error("❌ Failed to send photo to chatId {}: {}", chatId, e.getMessage());
+            sendMessageWithKeyboard(chatId, response.getText(), userMessage);
+        }
+    }
+
+    /**
+     * The photo under telegram.photo.base-dir, or null when it is missing or the path points outside
+     * the base directory (path_to_photo is operator input, "../application.properties" must not be uploaded)
+     */
+    private Path photoFile(String photoPath)
+    {
+        try
+        {
+            Path baseDir = Path.of(botConfig.getPhotoBaseDir()).toRealPath();
+            Path file = baseDir.resolve(photoPath.replaceFirst("^/+", "")).normalize();
+            if (!Files.isRegularFile(file))
+            {
+                return null;
+            }
+            // toRealPath also resolves symlinks that lead out of the base directory
+            if (!file.toRealPath().startsWith(baseDir))
+            {
+                log.warn("⚠️ Photo path outside the photo directory rejected: {}", photoPath);
+                return null;
+            }
+            return file;
+        }
+        catch (IOException | InvalidPathException e)
+        {
+            return null;
+        }
+    }
+
+    private SendPhoto createSendPhoto(Long chatId, InputFile photo, String caption, String userMessage)
+    {
+        SendPhoto sendPhoto = new SendPhoto();
+        sendPhoto.setChatId(chatId.toString());
+        sendPhoto.setPhoto(photo);
+        sendPhoto.setCaption(caption);
+        sendPhoto.setReplyMarkup(createKeyboardForMessage(userMessage, chatId));
+        return sendPhoto;
+    }
+
     // Keyboard creation methods in TelegramBotService
     private ReplyKeyboardMarkup getMainMenuKeyboard() {
         ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
@@ -120,6 +762,11 @@ public class TelegramBotService extends TelegramLongPollingBot
         row2.add("Search by filter");
         keyboard.add(row2);
         
+        KeyboardRow exportRow = new KeyboardRow();
+        exportRow.add("Export catalog (CSV)");
+        exportRow.add("Export catalog with attributes (CSV.gz)");
+        keyboard.add(exportRow);
+        
         KeyboardRow row3 = new KeyboardRow();
         row3.add("🔙 Back to Main Menu");
         keyboard.add(row3);
@@ -138,6 +785,7 @@ public class TelegramBotService extends TelegramLongPollingBot
         
         KeyboardRow row1 = new KeyboardRow();
         row1.add("Add new Thermal mug");
+        row1.add("Import thermal mugs from file");
         keyboard.add(row1);
         
         KeyboardRow row2 = new KeyboardRow();
@@ -177,23 +825,34 @@ public class TelegramBotService extends TelegramLongPollingBot
 
     // Keep your original sendMessage for simple text responses
     private void sendMessage(Long chatId, String text) {
-        SendMessage message = new SendMessage();
-        message.setChatId(chatId.toString());
-        message.setText(text);
+        sendMessage(chatId, text, null);
+    }
+
+    private void sendMessage(Long chatId, String text, ReplyKeyboard keyboard) {
+        SendMessage message = createMessage(chatId, text);
+        message.setReplyMarkup(keyboard);
         
         try {
+            sendLimiter.acquire();
             execute(message);
         } catch (TelegramApiException e) {
             log.error("❌ Failed to send message to chatId {}: {}", chatId, e.getMessage());
         }
     }
 
+    private SendMessage createMessage(Long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text);
+        return message;
+    }
+
     private ReplyKeyboardMarkup createKeyboardForMessage(String userMessage, Long chatId)
     {
         // Check if user is in stock update flow
         String userState = commandHandler.getUserState(chatId); // You'll need to add a getter for this
         
-        if (userState != null && userState.startsWith("AWAITING_STOCK_")) {
+        if (userState != null && (userState.startsWith("AWAITING_STOCK_") || userState.equals("AWAITING_IMPORT_DOCUMENT"))) {
             return createCancelKeyboard();
         }
         
@@ -204,6 +863,8 @@ public class TelegramBotService extends TelegramLongPollingBot
                 return createMainMenuKeyboard();
                 
             case "📦 Get products":
+            case "Export catalog (CSV)":
+            case "Export catalog with attributes (CSV.gz)":
                 return createProductsSubMenuKeyboard();
                 
             case "➕ Add new products":
@@ -212,11 +873,6 @@ public class TelegramBotService extends TelegramLongPollingBot
             case "✏️ Update products":
                 return createUpdateProductsSubMenuKeyboard();
                 
-            case "All products":
-            case "➡️ Next page":
-            case "⬅️ Previous page":
-                return createPaginationKeyboard(chatId);
-                
             default:
                 return createMainMenuKeyboard();
         }
@@ -240,33 +896,6 @@ public class TelegramBotService extends TelegramLongPollingBot
         return keyboardMarkup;
     }
 
-    /**
-     * Create pagination keyboard with Next/Previous buttons
-     */
-    private ReplyKeyboardMarkup createPaginationKeyboard(Long chatId)
-    {
-        ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
-        keyboardMarkup.setResizeKeyboard(true);
-        keyboardMarkup.setOneTimeKeyboard(false);
-        
-        List<KeyboardRow> keyboard = new ArrayList<>();
-        
-        // Pagination row
-        KeyboardRow paginationRow = new KeyboardRow();
-        paginationRow.add("⬅️ Previous page");
-        paginationRow.add("➡️ Next page");
-        keyboard.add(paginationRow);
-        
-        // Navigation row
-        KeyboardRow navRow = new KeyboardRow();
-        navRow.add("🔙 Back to Main Menu");
-        navRow.add("📦 Get products");
-        keyboard.add(navRow);
-        
-        keyboardMarkup.setKeyboard(keyboard);
-        return keyboardMarkup;
-    }
-
     // YOUR EXISTING KEYBOARD METHODS REMAIN THE SAME:
     private ReplyKeyboardMarkup createMainMenuKeyboard() {
         ReplyKeyboardMarkup keyboardMarkup = new ReplyKeyboardMarkup();
@@ -308,6 +937,11 @@ public class TelegramBotService extends TelegramLongPollingBot
         row2.add("Search by filter");
         keyboard.add(row2);
         
+        KeyboardRow exportRow = new KeyboardRow();
+        exportRow.add("Export catalog (CSV)");
+        exportRow.add("Export catalog with attributes (CSV.gz)");
+        keyboard.add(exportRow);
+        
         KeyboardRow row3 = new KeyboardRow();
         row3.add("🔙 Back to Main Menu");
         keyboard.add(row3);
@@ -326,6 +960,7 @@ public class TelegramBotService extends TelegramLongPollingBot
         // Row 1: Add thermocup
         KeyboardRow row1 = new KeyboardRow();
         row1.add("Add new Thermal mug");
+        row1.add("Import thermal mugs from file");
         keyboard.add(row1);
         
         // Row 2: Back button
@@ -0,0 +1,114 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one pacing point for every message this instance sends to Telegram: replies, notifications,
+ * progress edits and broadcasts. Telegram allows a bot about bot.telegram.send-rate-per-second messages
+ * in total, so in cluster mode every instance takes an equal share of it.
+ * Sends get evenly spaced slots; replies book the next free slot, broadcasts only take a slot nobody
+ * booked, so a running broadcast never delays an answer by more than one slot.
+ */
+@Component
+@Slf4j
+public class TelegramSendLimiter
+{
+
+    private final long intervalNanos;
+    private final Timer waited;
+    // Start of the next free send slot; guarded by this
+    private long nextFreeAt = System.nanoTime();
+
+    public TelegramSendLimiter(BotConfig botConfig, ChatShardRing shardRing, MeterRegistry meterRegistry)
+    {
+        int instances = botConfig.isClusterEnabled() ? Math.max(1, shardRing.getNodes().size()) : 1;
+        double perSecond = Math.max(1, botConfig.getTelegramSendRatePerSecond()) / (double) instances;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.waited = Timer.builder("bot.telegram.send.wait")
+                .description("Time replies waited for a Telegram send slot")
+                .register(meterRegistry);
+        log.info("📤 Telegram sends paced at {} msg/s on this instance", String.format("%.1f", perSecond));
+    }
+
+    public double getRatePerSecond()
+    {
+        return TimeUnit.SECONDS.toNanos(1) / (double) intervalNanos;
+    }
+
+    /**
+     * Replies and notifications: book the next free slot and wait for it
+     */
+    public void acquire()
+    {
+        long waitNanos;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            long slot = Math.max(nextFreeAt, now);
+            nextFreeAt = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        waited.record(waitNanos, TimeUnit.NANOSECONDS);
+        if (waitNanos > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Replies sent from the polling thread: take the current slot only if it is free, never wait
+     */
+    public synchronized boolean tryAcquire()
+    {
+        long now = System.nanoTime();
+        if (nextFreeAt > now)
+        {
+            return false;
+        }
+        nextFreeAt = now + intervalNanos;
+        return true;
+    }
+
+    /**
+     * Broadcasts: never books ahead, takes the current slot only when no reply has claimed it
+     */
+    public void acquireBackground() throws InterruptedException
+    {
+        while (true)
+        {
+            long waitNanos;
+            synchronized (this)
+            {
+                long now = System.nanoTime();
+                if (nextFreeAt <= now)
+                {
+                    nextFreeAt = now + intervalNanos;
+                    return;
+                }
+                waitNanos = nextFreeAt - now;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Telegram answered 429: hold every send until its retry_after has passed
+     */
+    public synchronized void pause(long seconds)
+    {
+        nextFreeAt = Math.max(nextFreeAt, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,94 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.model.ThermocupAttributes;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Thermal mugs: category "Thermocups", SKUs "T-xxxxxxx"
+ */
+@Component
+public class ThermocupCategory implements ProductCategory<ThermocupAttributes>
+{
+
+    @Override
+    public Set<String> names()
+    {
+        return Set.of("Thermocups");
+    }
+
+    @Override
+    public String primaryName()
+    {
+        return "Thermocups";
+    }
+
+    @Override
+    public String skuPrefix()
+    {
+        return "T";
+    }
+
+    @Override
+    public String attributesPath()
+    {
+        return "/products/thermocups/";
+    }
+
+    @Override
+    public Class<ThermocupAttributes> attributesType()
+    {
+        return ThermocupAttributes.class;
+    }
+
+    @Override
+    public String render(ThermocupAttributes thermocup)
+    {
+        return String.format(
+            "• Volume: %d ml\n• Color: %s\n• Brand: %s\n• Model: %s\n• Hermetic: %s\n• Material: %s",
+            thermocup.getVolume_ml(),
+            thermocup.getColor(),
+            thermocup.getBrand(),
+            thermocup.getModel(),
+            Boolean.TRUE.equals(thermocup.getIs_hermetic()) ? "Yes" : "No",
+            thermocup.getMaterial()
+        );
+    }
+
+    /**
+     * volume_ml|color|brand|model|is_hermetic|material
+     */
+    @Override
+    public ThermocupAttributes parse(String[] fields)
+    {
+        ThermocupAttributes attributes = new ThermocupAttributes();
+        attributes.setVolume_ml(Integer.parseInt(fields[0]));
+        attributes.setColor(fields[1]);
+        attributes.setBrand(fields[2]);
+        attributes.setModel(fields[3]);
+        attributes.setIs_hermetic(Boolean.parseBoolean(fields[4]));
+        attributes.setMaterial(fields[5]);
+        return attributes;
+    }
+
+    @Override
+    public List<String> columns()
+    {
+        return List.of("volume_ml", "color", "brand", "model", "is_hermetic", "material");
+    }
+
+    @Override
+    public ThermocupAttributes fromColumns(Columns row)
+    {
+        ThermocupAttributes attributes = new ThermocupAttributes();
+        attributes.setVolume_ml(row.integer("volume_ml"));
+        attributes.setColor(row.text("color"));
+        attributes.setBrand(row.text("brand"));
+        attributes.setModel(row.text("model"));
+        attributes.setIs_hermetic(row.bool("is_hermetic", false));
+        attributes.setMaterial(row.text("material"));
+        return attributes;
+    }
+}
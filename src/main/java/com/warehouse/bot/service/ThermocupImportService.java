@@ -0,0 +1,314 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import com.warehouse.bot.model.Product;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk thermocup import from an uploaded CSV or XLSX file.
+ * The whole file is parsed and validated before the first request, then the product and
+ * attribute POSTs run on a bounded worker pool. Each row's category is resolved through the
+ * CategoryRegistry (category_name, else SKU prefix, else thermal mug), and the category maps its
+ * own attribute columns, so rows of other registered categories import the same way.
+ */
+@Service
+@Slf4j
+public class ThermocupImportService
+{
+
+    public static final List<String> PRODUCT_COLUMNS = List.of(
+            "name", "category_name", "base_price", "sku", "is_active", "path_to_photo");
+
+    private final WarehouseApiService warehouseApiService;
+    private final CategoryRegistry categoryRegistry;
+    private final ThermocupCategory defaultCategory;
+    private final int concurrency;
+    private final ExecutorService workers;
+    // Imports run one after another; each one fans out to the worker pool
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+
+    public ThermocupImportService(WarehouseApiService warehouseApiService, CategoryRegistry categoryRegistry,
+                                  ThermocupCategory defaultCategory, BotConfig botConfig)
+    {
+        this.warehouseApiService = warehouseApiService;
+        this.categoryRegistry = categoryRegistry;
+        this.defaultCategory = defaultCategory;
+        this.concurrency = botConfig.getImportConcurrency();
+        this.workers = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener
+    {
+        void onProgress(int done, int failed, int total);
+    }
+
+    public record ImportRow(int rowNumber, Product product, ProductCategory<?> category, Object attributes) {}
+
+    public record RowError(int rowNumber, String reason) {}
+
+    public record ImportPlan(List<ImportRow> rows, List<RowError> errors) {}
+
+    public record ImportResult(int total, int created, List<RowError> errors) {}
+
+    /**
+     * Parse and validate every row. Nothing is sent to the warehouse service here.
+     */
+    public ImportPlan parse(Path file, String fileName) throws IOException
+    {
+        List<ImportRow> rows = new ArrayList<>();
+        List<RowError> errors = new ArrayList<>();
+        Map<String, Integer> header = new HashMap<>();
+
+        TabularFileReader.read(file, fileName, (rowNumber, cells) ->
+        {
+            if (rows.isEmpty() && errors.isEmpty() && header.isEmpty() && isHeader(cells))
+            {
+                for (int i = 0; i < cells.size(); i++)
+                {
+                    header.put(cells.get(i).trim().toLowerCase(Locale.ROOT), i);
+                }
+                return;
+            }
+            try
+            {
+                rows.add(parseRow(rowNumber, cells, header));
+            }
+            catch (IllegalArgumentException e)
+            {
+                errors.add(new RowError(rowNumber, e.getMessage()));
+            }
+        });
+
+        return new ImportPlan(rows, errors);
+    }
+
+    /**
+     * Create all valid rows with at most warehouse.import.concurrency requests in flight.
+     * Validation errors from the plan are reported together with failed requests.
+     */
+    public CompletableFuture<ImportResult> run(ImportPlan plan, ProgressListener listener)
+    {
+        return CompletableFuture.supplyAsync(() -> execute(plan, listener), coordinator);
+    }
+
+    private ImportResult execute(ImportPlan plan, ProgressListener listener)
+    {
+        int total = plan.rows().size();
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger created = new AtomicInteger();
+        List<RowError> errors = Collections.synchronizedList(new ArrayList<>(plan.errors()));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(total);
+
+        for (ImportRow row : plan.rows())
+        {
+            permits.acquireUninterruptibly();
+            futures.add(CompletableFuture.runAsync(() ->
+            {
+                try
+                {
+                    warehouseApiService.createProductRecord(row.product(), row.category(), row.attributes());
+                    created.incrementAndGet();
+                }
+                catch (Exception e)
+                {
+                    errors.add(new RowError(row.rowNumber(), e.getMessage()));
+                }
+                finally
+                {
+                    permits.release();
+                    int finished = done.incrementAndGet();
+                    listener.onProgress(finished, finished - created.get(), total);
+                }
+            }, workers));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        List<RowError> sorted = new ArrayList<>(errors);
+        sorted.sort((a, b) -> Integer.compare(a.rowNumber(), b.rowNumber()));
+        log.info("📥 Thermocup import finished: {} created, {} failed", created.get(), sorted.size());
+        return new ImportResult(total + plan.errors().size(), created.get(), sorted);
+    }
+
+    private boolean isHeader(List<String> cells)
+    {
+        return !cells.isEmpty() && cells.get(0).trim().equalsIgnoreCase("name");
+    }
+
+    /**
+     * Columns of a file without a header row: the product columns, then the category's attribute columns
+     */
+    public static List<String> columns(ProductCategory<?> category)
+    {
+        List<String> columns = new ArrayList<>(PRODUCT_COLUMNS);
+        columns.addAll(category.columns());
+        return columns;
+    }
+
+    private ImportRow parseRow(int rowNumber, List<String> cells, Map<String, Integer> header)
+    {
+        RowColumns row = new RowColumns(cells, header, PRODUCT_COLUMNS);
+        Product product = new Product();
+        product.setName(row.required("name"));
+        product.setCategory_name(row.text("category_name"));
+        product.setBase_price(parseDecimal(row.required("base_price"), "base_price"));
+        product.setSku(row.required("sku"));
+        product.setIs_active(row.bool("is_active", true));
+        product.setPath_to_photo(row.text("path_to_photo"));
+
+        CategoryRegistry.Registration<?> registration = categoryRegistry.lookup(product);
+        if (registration == null && product.getCategory_name() != null)
+        {
+            throw new IllegalArgumentException("unknown category_name: " + product.getCategory_name());
+        }
+        // Rows that name no category and have no known SKU prefix are thermal mugs, as the flow says
+        ProductCategory<?> category = registration != null ? registration.category() : defaultCategory;
+        if (product.getCategory_name() == null)
+        {
+            product.setCategory_name(category.primaryName());
+        }
+        Object attributes = category.fromColumns(new RowColumns(cells, header, columns(category)));
+        return new ImportRow(rowNumber, product, category, attributes);
+    }
+
+    /**
+     * Cells of one row by column name: from the header row when the file has one, else by position in layout
+     */
+    private final class RowColumns implements ProductCategory.Columns
+    {
+        private final List<String> cells;
+        private final Map<String, Integer> header;
+        private final List<String> layout;
+
+        private RowColumns(List<String> cells, Map<String, Integer> header, List<String> layout)
+        {
+            this.cells = cells;
+            this.header = header;
+            this.layout = layout;
+        }
+
+        @Override
+        public String text(String column)
+        {
+            Integer index = header.isEmpty() ? layout.indexOf(column) : header.get(column);
+            if (index == null || index < 0 || index >= cells.size())
+            {
+                return null;
+            }
+            String value = cells.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        @Override
+        public String required(String column)
+        {
+            String value = text(column);
+            if (value == null)
+            {
+                throw new IllegalArgumentException("missing " + column);
+            }
+            return value;
+        }
+
+        @Override
+        public Integer integer(String column)
+        {
+            return parseInt(required(column), column);
+        }
+
+        @Override
+        public Integer optionalInteger(String column)
+        {
+            String value = text(column);
+            return value != null ? parseInt(value, column) : null;
+        }
+
+        @Override
+        public Boolean bool(String column, boolean defaultValue)
+        {
+            String value = text(column);
+            return value != null ? parseBoolean(value, column) : defaultValue;
+        }
+    }
+
+    private BigDecimal parseDecimal(String value, String column)
+    {
+        try
+        {
+            BigDecimal decimal = new BigDecimal(value.replace(',', '.'));
+            if (decimal.signum() < 0)
+            {
+                throw new IllegalArgumentException(column + " must not be negative");
+            }
+            return decimal;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("invalid " + column + ": " + value);
+        }
+    }
+
+    private Integer parseInt(String value, String column)
+    {
+        try
+        {
+            // XLSX stores every number as a double, e.g. "500.0"
+            return new BigDecimal(value).intValueExact();
+        }
+        catch (NumberFormatException | ArithmeticException e)
+        {
+            throw new IllegalArgumentException("invalid " + column + ": " + value);
+        }
+    }
+
+    private Boolean parseBoolean(String value, String column)
+    {
+        switch (value.toLowerCase(Locale.ROOT))
+        {
+            case "true": case "yes": case "1":
+                return true;
+            case "false": case "no": case "0":
+                return false;
+            default:
+                throw new IllegalArgumentException("invalid " + column + ": " + value);
+        }
+    }
+
+    /**
+     * Stop taking new imports and let the running and queued ones finish within the timeout
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException
+    {
+        coordinator.shutdown();
+        boolean finished = coordinator.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        workers.shutdown();
+        return finished;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        coordinator.shutdown();
+        workers.shutdown();
+    }
+}
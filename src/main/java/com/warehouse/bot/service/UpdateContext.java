@@ -0,0 +1,74 @@
+package com.warehouse.bot.service;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-update values carried on the handler thread, so service calls deep in a command
+ * can see which Telegram update they are serving and how much of its deadline budget is left
+ * without threading extra parameters. The ids are also put in the logging MDC.
+ */
+public final class UpdateContext
+{
+
+    private static final ThreadLocal<UpdateContext> CURRENT = new ThreadLocal<>();
+
+    private final long updateId;
+    private final long chatId;
+    private final long deadlineNanos;
+
+    private UpdateContext(long updateId, long chatId, long deadlineNanos)
+    {
+        this.updateId = updateId;
+        this.chatId = chatId;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param deadlineNanos System.nanoTime() by which the reply should be sent
+     */
+    public static UpdateContext open(long updateId, long chatId, long deadlineNanos)
+    {
+        UpdateContext context = new UpdateContext(updateId, chatId, deadlineNanos);
+        CURRENT.set(context);
+        MDC.put("updateId", Long.toString(updateId));
+        MDC.put("chatId", Long.toString(chatId));
+        return context;
+    }
+
+    /**
+     * Context of the update handled on this thread, or null outside update handling
+     */
+    public static UpdateContext current()
+    {
+        return CURRENT.get();
+    }
+
+    public static void close()
+    {
+        CURRENT.remove();
+        MDC.remove("updateId");
+        MDC.remove("chatId");
+    }
+
+    public long getUpdateId()
+    {
+        return updateId;
+    }
+
+    public long getChatId()
+    {
+        return chatId;
+    }
+
+    public long getDeadlineNanos()
+    {
+        return deadlineNanos;
+    }
+
+    public long remainingMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+}
@@ -0,0 +1,263 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs update handlers on a bounded pool, one at a time per chat and in arrival order.
+ * A chat has a mailbox only while one of its updates is queued or running, so the mailbox map
+ * stays as small as the set of busy chats. Tracking in-flight work lets shutdown stop accepting
+ * updates and wait for the ones already received.
+ *
+ * Between chats, the worker queue is ordered by the priority of each chat's next update, aged by
+ * its wait time so browsing is delayed but never starved. Once bot.dispatch.shed-queue-depth
+ * updates are waiting, new LOW priority updates are rejected instead of queued.
+ * The priority given at dispatch comes from the update alone; an update that waited behind earlier
+ * updates of its chat can be re-ranked on a worker when it reaches the head of the mailbox, after
+ * those updates have changed the chat's state.
+ */
+@Component
+@Slf4j
+public class UpdateDispatcher
+{
+
+    public enum Priority
+    {
+        // Writes and steps of a multi-step flow
+        HIGH(5000),
+        // Menus and everything unclassified
+        NORMAL(1000),
+        // Catalog browsing and lookups
+        LOW(0);
+
+        // How much earlier than its arrival the update is ranked in the worker queue
+        private final long headStartNanos;
+
+        Priority(long headStartMillis)
+        {
+            this.headStartNanos = TimeUnit.MILLISECONDS.toNanos(headStartMillis);
+        }
+    }
+
+    public enum Outcome { ACCEPTED, SHED, CLOSED }
+
+    private record Task(Priority priority, Supplier<Priority> rerank, Runnable handler, long arrivedAt)
+    {
+        long rank(Priority current)
+        {
+            return arrivedAt - current.headStartNanos;
+        }
+    }
+
+    /**
+     * A chat that has work waiting, ranked by its next task
+     */
+    private final class ChatTurn implements Runnable, Comparable<ChatTurn>
+    {
+        private final Long chatId;
+        private final long rank;
+        private final long sequence = sequencer.getAndIncrement();
+
+        private ChatTurn(Long chatId, long rank)
+        {
+            this.chatId = chatId;
+            this.rank = rank;
+        }
+
+        @Override
+        public void run()
+        {
+            runNext(chatId);
+        }
+
+        @Override
+        public int compareTo(ChatTurn other)
+        {
+            int byRank = Long.compare(rank, other.rank);
+            return byRank != 0 ? byRank : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final BotConfig botConfig;
+    private final ThreadPoolExecutor workers;
+    private final Map<Long, Queue<Task>> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong sequencer = new AtomicLong();
+    private final Object idle = new Object();
+    private final Counter shed;
+    private volatile boolean accepting = true;
+
+    public UpdateDispatcher(BotConfig botConfig, MeterRegistry meterRegistry)
+    {
+        this.botConfig = botConfig;
+        this.workers = new ThreadPoolExecutor(botConfig.getDispatchThreads(), botConfig.getDispatchThreads(),
+                0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable ->
+        {
+            Thread thread = new Thread(runnable, "update-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shed = Counter.builder("bot.dispatch.shed")
+                .description("Low priority updates rejected because the dispatch queue was full")
+                .register(meterRegistry);
+        Gauge.builder("bot.dispatch.in_flight", inFlight, AtomicInteger::get)
+                .description("Updates queued or running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a handler for the chat. LOW priority updates are shed while the queue is over its depth.
+     * @param rerank priority to use if the update has to wait for earlier updates of the chat, evaluated
+     *               on a worker once they have run; null keeps the dispatch priority
+     */
+    public Outcome dispatch(Long chatId, Priority priority, Supplier<Priority> rerank, Runnable handler)
+    {
+        if (!accepting)
+        {
+            return Outcome.CLOSED;
+        }
+        if (priority == Priority.LOW && inFlight.get() >= botConfig.getDispatchShedQueueDepth())
+        {
+            shed.increment();
+            return Outcome.SHED;
+        }
+        inFlight.incrementAndGet();
+
+        Task task = new Task(priority, rerank, handler, System.nanoTime());
+        boolean[] start = new boolean[1];
+        mailboxes.compute(chatId, (id, queue) ->
+        {
+            if (queue == null)
+            {
+                queue = new ArrayDeque<>();
+                start[0] = true;
+            }
+            queue.add(task);
+            return queue;
+        });
+        if (start[0])
+        {
+            workers.execute(new ChatTurn(chatId, task.rank(priority)));
+        }
+        return Outcome.ACCEPTED;
+    }
+
+    /**
+     * Run the chat's oldest task, then requeue the chat ranked by its next task
+     */
+    private void runNext(Long chatId)
+    {
+        Task task = peek(chatId);
+        if (task == null)
+        {
+            return;
+        }
+
+        try
+        {
+            task.handler().run();
+        }
+        catch (RuntimeException e)
+        {
+            log.error("❌ Unhandled error in update handler for chatId {}: {}", chatId, e.getMessage());
+        }
+        finally
+        {
+            Task[] next = new Task[1];
+            mailboxes.computeIfPresent(chatId, (id, tasks) ->
+            {
+                tasks.poll();
+                next[0] = tasks.peek();
+                // Removing the empty mailbox hands ownership of the chat back to dispatch()
+                return next[0] == null ? null : tasks;
+            });
+            if (next[0] != null)
+            {
+                workers.execute(new ChatTurn(chatId, next[0].rank(currentPriority(next[0]))));
+            }
+            if (inFlight.decrementAndGet() == 0)
+            {
+                synchronized (idle)
+                {
+                    idle.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Outside the mailbox compute: re-ranking may read the chat's state from the backend
+     */
+    private Priority currentPriority(Task task)
+    {
+        if (task.rerank() == null)
+        {
+            return task.priority();
+        }
+        try
+        {
+            return task.rerank().get();
+        }
+        catch (RuntimeException e)
+        {
+            log.warn("⚠️ Could not re-rank update for its chat, keeping {}: {}", task.priority(), e.getMessage());
+            return task.priority();
+        }
+    }
+
+    private Task peek(Long chatId)
+    {
+        Task[] head = new Task[1];
+        mailboxes.computeIfPresent(chatId, (id, tasks) ->
+        {
+            head[0] = tasks.peek();
+            return tasks;
+        });
+        return head[0];
+    }
+
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * Stop accepting updates and wait for queued and running handlers.
+     * Returns true if everything finished before the timeout.
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException
+    {
+        accepting = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (idle)
+        {
+            while (inFlight.get() > 0)
+            {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0)
+                {
+                    log.warn("⚠️ Shutdown deadline reached with {} updates still in flight", inFlight.get());
+                    return false;
+                }
+                idle.wait(remaining);
+            }
+        }
+        workers.shutdown();
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package com.warehouse.bot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Sliding-window duplicate filter over Telegram update_id.
+ * update_id grows monotonically, so the last WINDOW ids are tracked in a ring bitmap indexed by
+ * update_id modulo WINDOW: fixed memory (8 KB) and O(1) amortised per update. Telegram only redelivers
+ * recent updates, so an id more than WINDOW below the highest one is not a redelivery but a sequence
+ * reset (update_id restarts at a random value after a week without updates): the window starts over there.
+ */
+@Component
+public class UpdateIdDeduplicator
+{
+
+    private static final int WINDOW = 1 << 16;
+
+    private final long[] seen = new long[WINDOW / 64];
+    private final Counter duplicates;
+    private long highest = -1;
+
+    public UpdateIdDeduplicator(MeterRegistry meterRegistry)
+    {
+        this.duplicates = Counter.builder("bot.updates.duplicate")
+                .description("Redelivered updates dropped by update_id")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns true the first time an update_id is seen and false for redeliveries
+     */
+    public synchronized boolean firstDelivery(long updateId)
+    {
+        if (highest >= 0 && updateId <= highest - WINDOW)
+        {
+            Arrays.fill(seen, 0L);
+            highest = updateId;
+        }
+        else if (updateId > highest)
+        {
+            advanceTo(updateId);
+        }
+
+        int bit = (int) (updateId & (WINDOW - 1));
+        long mask = 1L << (bit & 63);
+        if ((seen[bit >>> 6] & mask) != 0)
+        {
+            duplicates.increment();
+            return false;
+        }
+        seen[bit >>> 6] |= mask;
+        return true;
+    }
+
+    /**
+     * Clear the slots that now belong to ids (highest, updateId] so they do not carry old bits
+     */
+    private void advanceTo(long updateId)
+    {
+        if (highest < 0 || updateId - highest >= WINDOW)
+        {
+            Arrays.fill(seen, 0L);
+        }
+        else
+        {
+            for (long id = highest + 1; id <= updateId; id++)
+            {
+                int bit = (int) (id & (WINDOW - 1));
+                seen[bit >>> 6] &= ~(1L << (bit & 63));
+            }
+        }
+        highest = updateId;
+    }
+}
@@ -1,68 +1,235 @@
 package com.warehouse.bot.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.warehouse.bot.config.BotConfig;
 import com.warehouse.bot.model.*;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 @Service
 @Slf4j
 public class WarehouseApiService
 {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    // Quantity endpoints used for products whose category has no ProductCategory bean
+    private static final String LEGACY_QUANTITY_PATH = "/products/thermocups/";
+
     private final RestTemplate restTemplate;
     private final BotConfig botConfig;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader productReader;
+    private final ConditionalResponseCache responseCache;
+    private final AvailabilityLedger availabilityLedger;
+    private final RetryExecutor retryExecutor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final HedgedReadExecutor hedgedReadExecutor;
+    private final InventoryAuditJournal auditJournal;
+    private final InventoryOutbox inventoryOutbox;
+    private final WarehouseStockMatrix stockMatrix;
+    private final CategoryRegistry categoryRegistry;
+    // Category of every product decoded so far; quantity writes go to that category's endpoints
+    private final Map<Long, ProductCategory<?>> categoryByProduct = new ConcurrentHashMap<>();
 
-    public WarehouseApiService(RestTemplate restTemplate, BotConfig botConfig)
+    public WarehouseApiService(RestTemplate restTemplate, BotConfig botConfig, ObjectMapper objectMapper,
+                               ConditionalResponseCache responseCache, AvailabilityLedger availabilityLedger,
+                               RetryExecutor retryExecutor, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                               HedgedReadExecutor hedgedReadExecutor, InventoryAuditJournal auditJournal,
+                               InventoryOutbox inventoryOutbox, WarehouseStockMatrix stockMatrix,
+                               CategoryRegistry categoryRegistry)
     {
         this.restTemplate = restTemplate;
         this.botConfig = botConfig;
+        this.objectMapper = objectMapper;
+        this.productReader = objectMapper.readerFor(Product.class);
+        this.responseCache = responseCache;
+        this.availabilityLedger = availabilityLedger;
+        this.retryExecutor = retryExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.hedgedReadExecutor = hedgedReadExecutor;
+        this.auditJournal = auditJournal;
+        this.inventoryOutbox = inventoryOutbox;
+        this.stockMatrix = stockMatrix;
+        this.categoryRegistry = categoryRegistry;
     }
 
     public List<Product> getProducts(Map<String, String> filters)
     {
         try
         {
-            UriComponentsBuilder builder = UriComponentsBuilder
-                    .fromHttpUrl(botConfig.getWarehouseServiceUrl() + "/products");
+            return conditionalGet(productsUrl(filters), (body, sentAt) ->
+            {
+                List<Product> products = new ArrayList<>();
+                readProductArray(body, sentAt, products::add);
+                return Collections.unmodifiableList(products);
+            });
+        }
+        catch (Exception e)
+        {
+            log.error("Error getting products: {}", e.getMessage());
+            return List.of();
+        }
+    }
 
-            filters.forEach(builder::queryParam);
+    /**
+     * Version of the last catalog representation read through getProducts(Map.of()),
+     * 0 when the catalog has not been loaded yet
+     */
+    public int getCatalogVersion()
+    {
+        ConditionalResponseCache.Entry<List<Product>> cached = responseCache.get(productsUrl(Map.of()));
+        return cached != null ? cached.getVersion() : 0;
+    }
 
-            ResponseEntity<List<Product>> response = restTemplate.exchange(
-                    builder.toUriString(),
+    /**
+     * Stream /products into the consumer one element at a time.
+     * The array is decoded token by token, so the full response is never held in memory
+     * unless the consumer itself collects it. Returns the number of products delivered.
+     */
+    public int streamProducts(Map<String, String> filters, Consumer<Product> consumer)
+    {
+        // The permit is returned once the body starts; the consumer's time is not warehouse latency
+        Integer count = concurrencyLimiter.callStreaming(firstByte ->
+        {
+            long sentAt = System.nanoTime();
+            return restTemplate.execute(
+                    productsUrl(filters),
                     HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<List<Product>>() {}
+                    request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                    response ->
+                    {
+                        firstByte.run();
+                        return readProductArray(response.getBody(), sentAt, consumer);
+                    }
             );
+        });
 
-            // Fix null values in the returned product list
-            List<Product> products = response.getBody();
-            if (products != null)
-            {
-                for (Product product : products)
-                {
-                    if (product.getNum_reserved_goods() == null)
+        return count != null ? count : 0;
+    }
+
+    private String productsUrl(Map<String, String> filters)
+    {
+        UriComponentsBuilder builder = UriComponentsBuilder
+                .fromHttpUrl(botConfig.getWarehouseServiceUrl() + "/products");
+
+        filters.forEach(builder::queryParam);
+        return builder.toUriString();
+    }
+
+    /**
+     * GET with ETag / Last-Modified revalidation.
+     * A fresh cached entry is returned without a request, a stale one is sent with
+     * If-None-Match / If-Modified-Since and reused when the server answers 304.
+     */
+    private <T> T conditionalGet(String url, BodyReader<T> reader)
+    {
+        return conditionalGet(url, reader, null);
+    }
+
+    /**
+     * @param hedgeOperation latency class for hedged reads, null to send a single request per attempt
+     */
+    private <T> T conditionalGet(String url, BodyReader<T> reader, String hedgeOperation)
+    {
+        ConditionalResponseCache.Entry<T> cached = responseCache.get(url);
+        if (cached != null && responseCache.isFresh(cached))
+        {
+            return responseCache.hit(cached);
+        }
+
+        return retryExecutor.call("GET " + url, () -> hedged(hedgeOperation, () -> concurrencyLimiter.call(() ->
+        {
+            long sentAt = System.nanoTime();
+            return restTemplate.execute(
+                    url,
+                    HttpMethod.GET,
+                    request ->
                     {
-                        product.setNum_reserved_goods(0);
+                        request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+                        if (cached != null)
+                        {
+                            responseCache.applyValidators(cached, request.getHeaders());
+                        }
+                    },
+                    response ->
+                    {
+                        if (cached != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value())
+                        {
+                            return responseCache.revalidated(url, cached);
+                        }
+
+                        CountingInputStream body = new CountingInputStream(response.getBody());
+                        T value = reader.read(body, sentAt);
+                        return responseCache.store(url, response.getHeaders(), value, body.getCount(), body.getChecksum());
                     }
-                }
+            );
+        })));
+    }
+
+    private <T> T hedged(String operation, Supplier<T> request)
+    {
+        return operation != null ? hedgedReadExecutor.read(operation, request) : request.get();
+    }
+
+    private int readProductArray(InputStream body, long sentAt, Consumer<Product> consumer) throws IOException
+    {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body))
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new IOException("Expected JSON array of products");
             }
 
-            return products != null ? products : List.of();
+            int count = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT)
+            {
+                Product product = productReader.readValue(parser);
+                consumer.accept(normalize(product, sentAt));
+                count++;
+            }
+            return count;
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Fix null values returned by the warehouse service and sync the availability ledger
+     * @param sentAt System.nanoTime() when the request was sent
+     */
+    private Product normalize(Product product, long sentAt)
+    {
+        if (product.getNum_reserved_goods() == null)
         {
-            log.error("Error getting products: {}", e.getMessage());
-            return List.of();
+            product.setNum_reserved_goods(0);
+        }
+        availabilityLedger.observe(product, sentAt);
+        CategoryRegistry.Registration<?> category = product.getId() != null ? categoryRegistry.lookup(product) : null;
+        if (category != null)
+        {
+            categoryByProduct.put(product.getId().longValue(), category.category());
         }
+        return product;
     }
 
     public Product getProductById(Long productId)
@@ -70,13 +237,7 @@ public class WarehouseApiService
         try
         {
             String url = botConfig.getWarehouseServiceUrl() + "/products/" + productId;
-            Product product = restTemplate.getForObject(url, Product.class);
-            if (product.getNum_reserved_goods() == null)
-            {
-                product.setNum_reserved_goods(0);
-            }
-
-            return product;
+            return conditionalGet(url, (body, sentAt) -> normalize(productReader.readValue(body), sentAt), "product");
         }
         catch (Exception e)
         {
@@ -97,20 +258,9 @@ public class WarehouseApiService
             if (product == null) return null;
             
             // Then get attributes based on category
-            Object attributes = null;
-            String category_name = product.getCategory_name();
-            if (category_name.equals("Thermocups")) // 1 == Thermocup
-            {
-                attributes = getThermocupAttributes(productId);
-            }
-            else if (category_name.equals("Server")) // 2 == Server
-            {
-                attributes = getServerAttributes(productId);
-            }
-            
             ProductWithAttributes<Object> result = new ProductWithAttributes<>();
             result.setProduct(product);
-            result.setAttributes(attributes);
+            result.setAttributes(getAttributes(product));
             return result;
         }
         catch (Exception e)
@@ -120,134 +270,175 @@ public class WarehouseApiService
         }
     }
 
-    public ThermocupAttributes getThermocupAttributes(Long productId)
+    /**
+     * Category-specific attributes for an already loaded product, null for categories without attributes
+     */
+    public Object getAttributes(Product product)
     {
-        try
-        {
-            System.out.println("getThermocupAttributesAAAAAAAAAAAAAAAA");
-            String url = botConfig.getWarehouseServiceUrl() + "/products/thermocups/" + productId;
-            return restTemplate.getForObject(url, ThermocupAttributes.class);
-        }
-        catch (Exception e)
-        {
-            log.error("Error getting thermocup attributes: {}", e.getMessage());
-            return null;
-        }
+        CategoryRegistry.Registration<?> category = categoryRegistry.lookup(product);
+        return category != null ? getAttributes(category, product.getId().longValue()) : null;
     }
 
-    public ServerAttributes getServerAttributes(Long productId)
+    public <T> T getAttributes(CategoryRegistry.Registration<T> category, Long productId)
     {
         try
         {
-            String url = botConfig.getWarehouseServiceUrl() + "/products/servers/" + productId;
-            return restTemplate.getForObject(url, ServerAttributes.class);
+            String url = botConfig.getWarehouseServiceUrl() + category.category().attributesPath() + productId;
+            return retryExecutor.call("GET " + url, () -> hedged("attributes", () -> concurrencyLimiter.call(() -> restTemplate.execute(
+                    url,
+                    HttpMethod.GET,
+                    request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                    response -> category.reader().<T>readValue(response.getBody())
+            ))));
         }
         catch (Exception e)
         {
-            log.error("Error getting server attributes: {}", e.getMessage());
+            log.error("Error getting {} attributes: {}", category.category().attributesType().getSimpleName(), e.getMessage());
             return null;
         }
     }
 
     public String updateStockQuantity(Long productId, Integer warehouseId, Integer quantityChange)
     {
+        String idempotencyKey = idempotencyKey("stock", productId);
+        if (inventoryOutbox.hasPending(productId))
+        {
+            // Keep this product's writes in order behind the ones already queued
+            return queueWrite(InventoryAuditJournal.Kind.STOCK, productId, warehouseId, quantityChange, idempotencyKey);
+        }
         try
         {
-            String url = botConfig.getWarehouseServiceUrl() + "/products/thermocups/update/" + productId + "/stock";
-            
-            // Create request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("warehouse_id", warehouseId);
-            requestBody.put("quantity_change", quantityChange);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-            
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            log.info("🔄 Updating stock quantity - Product ID: {}, Warehouse: {}, Change: {}", 
-                    productId, warehouseId, quantityChange);
-            log.info("📤 Sending PATCH request to: {}", url);
-            log.info("📦 Request body: {}", requestBody);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url, 
-                    HttpMethod.PATCH, 
-                    request, 
-                    String.class
+            applyStockChange(productId, warehouseId, quantityChange, idempotencyKey);
+
+            String successMessage = String.format(
+                "✅ Stock quantity updated successfully!\n" +
+                "📦 Product ID: %d\n" +
+                "🏭 Warehouse: %d\n" +
+                "📊 Quantity change: %+d",
+                productId, warehouseId, quantityChange
             );
-            
-            if (response.getStatusCode().is2xxSuccessful())
-            {
-                String successMessage = String.format(
-                    "✅ Stock quantity updated successfully!\n" +
-                    "📦 Product ID: %d\n" +
-                    "🏭 Warehouse: %d\n" +
-                    "📊 Quantity change: %+d",
-                    productId, warehouseId, quantityChange
-                );
-                log.info("✅ Stock update successful: {}", successMessage);
-                return successMessage;
-            }
-            else
-            {
-                String errorMessage = "❌ Failed to update stock quantity: " + response.getBody();
-                log.error("❌ Stock update failed: {}", errorMessage);
-                return errorMessage;
-            }
-            
+            log.info("✅ Stock update successful: {}", successMessage);
+            return successMessage;
+        }
+        catch (IllegalStateException e)
+        {
+            String errorMessage = "❌ Failed to update stock quantity: " + e.getMessage();
+            log.error("❌ Stock update failed: {}", errorMessage);
+            return errorMessage;
         }
         catch (Exception e)
         {
+            if (RetryExecutor.isRetryableLater(e))
+            {
+                log.warn("⚠️ Warehouse service unreachable, queueing stock change for product {}: {}", productId, e.getMessage());
+                return queueWrite(InventoryAuditJournal.Kind.STOCK, productId, warehouseId, quantityChange, idempotencyKey);
+            }
             String errorMessage = "❌ Error updating stock quantity: " + e.getMessage();
             log.error("❌ Exception during stock update: {}", errorMessage);
             return errorMessage;
         }
     }
 
-    public String createThermocup(Product product, ThermocupAttributes attributes)
+    /**
+     * PATCH a stock delta. Throws IllegalStateException when the warehouse service rejects it
+     * and RestClientException when it cannot be reached.
+     */
+    public void applyStockChange(Long productId, Integer warehouseId, Integer quantityChange)
+    {
+        applyStockChange(productId, warehouseId, quantityChange, idempotencyKey("stock", productId));
+    }
+
+    /**
+     * PATCH a stock delta under a caller-chosen idempotency key; resending with the same key never
+     * applies the delta twice
+     */
+    public void applyStockChange(Long productId, Integer warehouseId, Integer quantityChange, String idempotencyKey)
+    {
+        String url = quantityUrl(productId, "stock");
+        
+        // Create request body
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("warehouse_id", warehouseId);
+        requestBody.put("quantity_change", quantityChange);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+        
+        log.debug("PATCH {} {}", url, requestBody);
+        ResponseEntity<String> response = sendQuantityPatch(InventoryAuditJournal.Kind.STOCK, url, request,
+                productId, warehouseId, quantityChange);
+        
+        if (!response.getStatusCode().is2xxSuccessful())
+        {
+            throw new IllegalStateException(String.valueOf(response.getBody()));
+        }
+        availabilityLedger.applyStock(productId, quantityChange);
+        stockMatrix.apply(productId, warehouseId, quantityChange);
+        responseCache.markStale();
+    }
+
+    public String createProduct(Product product, ProductCategory<?> category, Object attributes)
     {
         try
         {
-            // First create the main product
-            String productUrl = botConfig.getWarehouseServiceUrl() + "/products";
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Product> productRequest = new HttpEntity<>(product, headers);
-            ResponseEntity<Product> productResponse = restTemplate.postForEntity(productUrl, productRequest, Product.class);
-            
-            if (productResponse.getStatusCode() != HttpStatus.OK)
-            {
-                return "Error creating product: " + productResponse.getBody();
-            }
-            
-            // Then create thermocup attributes
-            Integer newProductId = productResponse.getBody().getId();
-            attributes.setProduct_id(newProductId);
-            
-            String attributesUrl = botConfig.getWarehouseServiceUrl() + "/products/thermocups/create";
-            HttpEntity<ThermocupAttributes> attributesRequest = new HttpEntity<>(attributes, headers);
-            ResponseEntity<String> attributesResponse = restTemplate.postForEntity(attributesUrl, attributesRequest, String.class);
-            
-            if (attributesResponse.getStatusCode() == HttpStatus.OK)
-            {
-                return "Thermocup created successfully with ID: " + newProductId;
-            }
-            else
-            {
-                return "Error creating thermocup attributes: " + attributesResponse.getBody();
-            }
+            Integer newProductId = createProductRecord(product, category, attributes);
+            return "Product created successfully with ID: " + newProductId;
+        }
+        catch (IllegalStateException e)
+        {
+            return e.getMessage();
         }
         catch (Exception e)
         {
-            log.error("Error creating thermocup: {}", e.getMessage());
-            return "Error creating thermocup: " + e.getMessage();
+            log.error("Error creating product: {}", e.getMessage());
+            return "Error creating product: " + e.getMessage();
         }
     }
 
+    /**
+     * Create the product and its attributes at the category's endpoint, returning the new product ID.
+     * Throws IllegalStateException when the warehouse service rejects either request.
+     */
+    public Integer createProductRecord(Product product, ProductCategory<?> category, Object attributes)
+    {
+        // First create the main product
+        String productUrl = botConfig.getWarehouseServiceUrl() + "/products";
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        
+        HttpEntity<Product> productRequest = new HttpEntity<>(product, headers);
+        ResponseEntity<Product> productResponse = concurrencyLimiter.call(
+                () -> restTemplate.postForEntity(productUrl, productRequest, Product.class));
+        
+        if (productResponse.getStatusCode() != HttpStatus.OK || productResponse.getBody() == null)
+        {
+            throw new IllegalStateException("Error creating product: " + productResponse.getBody());
+        }
+        
+        // Then create the category attributes, linked to the new product
+        Integer newProductId = productResponse.getBody().getId();
+        categoryByProduct.put(newProductId.longValue(), category);
+        ObjectNode body = objectMapper.valueToTree(attributes);
+        body.put("product_id", newProductId);
+        
+        String attributesUrl = botConfig.getWarehouseServiceUrl() + category.attributesPath() + "create";
+        HttpEntity<ObjectNode> attributesRequest = new HttpEntity<>(body, headers);
+        ResponseEntity<String> attributesResponse = concurrencyLimiter.call(
+                () -> restTemplate.postForEntity(attributesUrl, attributesRequest, String.class));
+        
+        responseCache.markStale();
+        if (attributesResponse.getStatusCode() != HttpStatus.OK)
+        {
+            throw new IllegalStateException("Error creating " + category.primaryName() + " attributes: " + attributesResponse.getBody());
+        }
+        return newProductId;
+    }
+
     public String updateThermocup(Long productId, Product productUpdate, ThermocupAttributes attributesUpdate)
     {
         try
@@ -270,10 +461,12 @@ public class WarehouseApiService
             
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(updateRequest, headers);
             
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.PUT, request, String.class);
+            ResponseEntity<String> response = concurrencyLimiter.call(
+                    () -> restTemplate.exchange(url, HttpMethod.PUT, request, String.class));
             
             if (response.getStatusCode() == HttpStatus.OK)
             {
+                responseCache.markStale();
                 return "Thermocup updated successfully!";
             }
             else
@@ -293,58 +486,241 @@ public class WarehouseApiService
      */
     public String updateReservedQuantity(Long productId, Integer quantityChange)
     {
+        // Validated and counted as pending under the product's lock; the write itself runs without it
+        String rejection = availabilityLedger.hold(productId, quantityChange);
+        if (rejection != null)
+        {
+            return rejection;
+        }
+        String idempotencyKey = idempotencyKey("reserved", productId);
+        if (inventoryOutbox.hasPending(productId))
+        {
+            return queueWrite(InventoryAuditJournal.Kind.RESERVED, productId, 0, quantityChange, idempotencyKey);
+        }
         try
         {
-            String url = botConfig.getWarehouseServiceUrl() + "/products/thermocups/update/" + productId + "/reserved";
-            
-            // Create request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("quantity_change", quantityChange);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("accept", "application/json");
-            
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            log.info("🔄 Updating reserved quantity - Product ID: {}, Change: {}", 
-                    productId, quantityChange);
-            log.info("📤 Sending PATCH request to: {}", url);
-            log.info("📦 Request body: {}", requestBody);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
+            applyPendingReservedChange(productId, quantityChange, idempotencyKey);
+
+            String successMessage = String.format(
+                "✅ Reserved quantity updated successfully!\n" +
+                "📦 Product ID: %d\n" +
+                "📊 Quantity change: %+d",
+                productId, quantityChange
+            );
+            log.info("✅ Reserved quantity update successful: {}", successMessage);
+            return successMessage;
+        }
+        catch (IllegalStateException e)
+        {
+            availabilityLedger.settlePendingReserved(productId, quantityChange);
+            String errorMessage = "❌ Failed to update reserved quantity. " + e.getMessage();
+            log.error("❌ Reserved quantity update failed: {}", errorMessage);
+            return errorMessage;
+        }
+        catch (Exception e)
+        {
+            if (RetryExecutor.isRetryableLater(e))
+            {
+                // The hold stays pending; the outbox carries it until the replay commits or releases it
+                log.warn("⚠️ Warehouse service unreachable, queueing reserved change for product {}: {}", productId, e.getMessage());
+                return queueWrite(InventoryAuditJournal.Kind.RESERVED, productId, 0, quantityChange, idempotencyKey);
+            }
+            availabilityLedger.settlePendingReserved(productId, quantityChange);
+            log.error("❌ Exception during reserved quantity update: {}", e.getMessage(), e);
+            return "❌ Error updating reserved quantity: " + e.getMessage();
+        }
+    }
+
+    /**
+     * PATCH a reserved delta that the ledger already holds as pending; on success it moves from
+     * pending to reserved atomically. Throws IllegalStateException when the warehouse service rejects it
+     * and RestClientException when it cannot be reached.
+     */
+    public void applyPendingReservedChange(Long productId, Integer quantityChange, String idempotencyKey)
+    {
+        patchReserved(productId, quantityChange, idempotencyKey);
+        availabilityLedger.commitPendingReserved(productId, quantityChange);
+        responseCache.markStale();
+    }
+
+    private void patchReserved(Long productId, Integer quantityChange, String idempotencyKey)
+    {
+        String url = quantityUrl(productId, "reserved");
+        
+        // Create request body
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("quantity_change", quantityChange);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("accept", "application/json");
+        headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+        
+        log.debug("PATCH {} {}", url, requestBody);
+        ResponseEntity<String> response = sendQuantityPatch(InventoryAuditJournal.Kind.RESERVED, url, request,
+                productId, 0, quantityChange);
+        log.debug("PATCH {} -> {} {}", url, response.getStatusCode(), response.getBody());
+        
+        if (!response.getStatusCode().is2xxSuccessful())
+        {
+            throw new IllegalStateException("Status: " + response.getStatusCode() + ", Body: " + response.getBody());
+        }
+    }
+
+    /**
+     * PATCH endpoint of a product's stock or reserved count under its category's attributes path.
+     * A product not decoded yet is read first, so an unreachable backend fails the write as transient.
+     * Products of a category without a ProductCategory bean use LEGACY_QUANTITY_PATH.
+     */
+    private String quantityUrl(Long productId, String quantity)
+    {
+        ProductCategory<?> category = categoryByProduct.get(productId);
+        if (category == null)
+        {
+            conditionalGet(botConfig.getWarehouseServiceUrl() + "/products/" + productId,
+                    (body, sentAt) -> normalize(productReader.readValue(body), sentAt), "product");
+            category = categoryByProduct.get(productId);
+        }
+        String path = category != null ? category.attributesPath() : LEGACY_QUANTITY_PATH;
+        return botConfig.getWarehouseServiceUrl() + path + "update/" + productId + "/" + quantity;
+    }
+
+    /**
+     * Offline mode: persist the write in the outbox; the operator is notified when it is replayed.
+     * When the outbox itself cannot be written the change is dropped and a held reserved delta released.
+     */
+    private String queueWrite(InventoryAuditJournal.Kind kind, Long productId, Integer warehouseId,
+                              Integer quantityChange, String idempotencyKey)
+    {
+        UpdateContext context = UpdateContext.current();
+        try
+        {
+            inventoryOutbox.enqueue(kind, productId, warehouseId != null ? warehouseId : 0, quantityChange,
+                    context != null ? context.getChatId() : 0L, idempotencyKey);
+        }
+        catch (IllegalStateException e)
+        {
+            if (kind == InventoryAuditJournal.Kind.RESERVED)
+            {
+                availabilityLedger.settlePendingReserved(productId, quantityChange);
+            }
+            log.error("❌ Cannot queue {} change for product {}: {}", kind, productId, e.getMessage());
+            return String.format("❌ Warehouse service is unavailable and the %s change could not be queued. " +
+                    "Please try again later.", kind == InventoryAuditJournal.Kind.STOCK ? "stock" : "reserved");
+        }
+        return String.format("⏳ Warehouse service is unavailable, your %s change is queued\n" +
+                        "📦 Product ID: %d\n📊 Quantity change: %+d\n\n" +
+                        "It will be applied automatically and you will get a confirmation.",
+                kind == InventoryAuditJournal.Kind.STOCK ? "stock" : "reserved", productId, quantityChange);
+    }
+
+    /**
+     * Send a quantity PATCH and append its outcome and latency to the audit journal
+     */
+    private ResponseEntity<String> sendQuantityPatch(InventoryAuditJournal.Kind kind, String url,
+                                                     HttpEntity<Map<String, Object>> request,
+                                                     Long productId, Integer warehouseId, Integer quantityChange)
+    {
+        long started = System.nanoTime();
+        InventoryAuditJournal.Outcome outcome = InventoryAuditJournal.Outcome.FAILED;
+        try
+        {
+            // Safe to repeat: the idempotency key makes the backend apply the delta at most once
+            ResponseEntity<String> response = retryExecutor.call("PATCH " + url, () -> concurrencyLimiter.call(() -> restTemplate.exchange(
                     url, 
                     HttpMethod.PATCH, 
                     request, 
                     String.class
-            );
-            
-            log.info("📥 Response status: {}", response.getStatusCode());
-            log.info("📥 Response body: {}", response.getBody());
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                String successMessage = String.format(
-                    "✅ Reserved quantity updated successfully!\n" +
-                    "📦 Product ID: %d\n" +
-                    "📊 Quantity change: %+d",
-                    productId, quantityChange
-                );
-                log.info("✅ Reserved quantity update successful: {}", successMessage);
-                return successMessage;
+            )));
+            outcome = response.getStatusCode().is2xxSuccessful()
+                    ? InventoryAuditJournal.Outcome.OK
+                    : InventoryAuditJournal.Outcome.REJECTED;
+            return response;
+        }
+        catch (HttpClientErrorException e)
+        {
+            outcome = InventoryAuditJournal.Outcome.REJECTED;
+            throw e;
+        }
+        finally
+        {
+            UpdateContext context = UpdateContext.current();
+            auditJournal.record(kind, context != null ? context.getChatId() : 0L, productId,
+                    warehouseId != null ? warehouseId : 0, quantityChange, outcome, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Key for a write issued while handling an update: derived from update_id, so a redelivered
+     * update or a retried request maps to the same key. Writes outside an update get a random key.
+     */
+    private static String idempotencyKey(String operation, Long productId)
+    {
+        UpdateContext context = UpdateContext.current();
+        if (context == null)
+        {
+            return operation + "-" + productId + "-" + UUID.randomUUID();
+        }
+        return operation + "-" + productId + "-u" + context.getUpdateId();
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T>
+    {
+        /**
+         * @param sentAt System.nanoTime() when the request was sent
+         */
+        T read(InputStream body, long sentAt) throws IOException;
+    }
+
+    /**
+     * Counts and checksums decoded body bytes, so the cache can report how much a 304 saved
+     * and fingerprint bodies that come without validators
+     */
+    private static final class CountingInputStream extends FilterInputStream
+    {
+        private final CRC32 checksum = new CRC32();
+        private long count;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0)
+            {
+                count++;
+                checksum.update(b);
             }
-            else
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            int n = super.read(buffer, offset, length);
+            if (n > 0)
             {
-                String errorMessage = "❌ Failed to update reserved quantity. Status: " + 
-                                    response.getStatusCode() + ", Body: " + response.getBody();
-                log.error("❌ Reserved quantity update failed: {}", errorMessage);
-                return errorMessage;
+                count += n;
+                checksum.update(buffer, offset, n);
             }
-            
+            return n;
         }
-        catch (Exception e)
+
+        long getCount()
         {
-            log.error("❌ Exception during reserved quantity update: {}", e.getMessage(), e);
-            return "❌ Error updating reserved quantity: " + e.getMessage();
+            return count;
+        }
+
+        int getChecksum()
+        {
+            return (int) checksum.getValue();
         }
     }
 
@@ -0,0 +1,80 @@
+package com.warehouse.bot.service;
+
+import com.warehouse.bot.config.BotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Known warehouses from warehouse.directory ("id:name,id:name").
+ * The warehouse service has no endpoint listing warehouses, so the directory is configuration,
+ * parsed once at startup; a malformed entry fails the startup instead of silently accepting every id.
+ * An empty directory disables warehouse id validation.
+ */
+@Component
+@Slf4j
+public class WarehouseDirectory
+{
+
+    private final Map<Integer, String> warehouses;
+
+    public WarehouseDirectory(BotConfig botConfig)
+    {
+        Map<Integer, String> parsed = new LinkedHashMap<>();
+        for (String entry : botConfig.getWarehouseDirectory().split(","))
+        {
+            if (entry.isBlank())
+            {
+                continue;
+            }
+            String[] parts = entry.split(":", 2);
+            try
+            {
+                int id = Integer.parseInt(parts[0].trim());
+                String name = parts.length == 2 && !parts[1].isBlank() ? parts[1].trim() : "Warehouse " + id;
+                if (parsed.put(id, name) != null)
+                {
+                    throw new IllegalStateException("Duplicate warehouse id in warehouse.directory: " + id);
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalStateException("Invalid warehouse.directory entry: '" + entry + "'", e);
+            }
+        }
+        this.warehouses = Collections.unmodifiableMap(parsed);
+        if (warehouses.isEmpty())
+        {
+            log.warn("⚠️ warehouse.directory is empty, warehouse ids are not validated");
+        }
+    }
+
+    public boolean isKnown(int warehouseId)
+    {
+        return warehouses.isEmpty() || warehouses.containsKey(warehouseId);
+    }
+
+    public String nameOf(int warehouseId)
+    {
+        return warehouses.getOrDefault(warehouseId, "Warehouse " + warehouseId);
+    }
+
+    public Map<Integer, String> getWarehouses()
+    {
+        return warehouses;
+    }
+
+    /**
+     * "1 - Main, 2 - North" for prompts and error messages
+     */
+    public String describe()
+    {
+        return warehouses.entrySet().stream()
+                .map(entry -> entry.getKey() + " - " + entry.getValue())
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,78 @@
+package com.warehouse.bot.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Product x warehouse stock movements, plus a running total per warehouse.
+ * The warehouse service only reports a product's total_quantity, so the split by warehouse is
+ * built locally: rebuilt at startup from the successful stock writes in the audit journal and
+ * updated as each stock write succeeds. Each write touches one cell and one total; the breakdown
+ * never aggregates over the catalog.
+ */
+@Component
+@Slf4j
+public class WarehouseStockMatrix
+{
+
+    private final InventoryAuditJournal auditJournal;
+    // productId -> warehouseId -> net quantity written through the bot
+    private final Map<Long, Map<Integer, Integer>> cells = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> warehouseTotals = new ConcurrentHashMap<>();
+
+    public WarehouseStockMatrix(InventoryAuditJournal auditJournal)
+    {
+        this.auditJournal = auditJournal;
+    }
+
+    @PostConstruct
+    public void rebuild()
+    {
+        long started = System.nanoTime();
+        int[] applied = new int[1];
+        auditJournal.replay(record ->
+        {
+            if (record.kind() == InventoryAuditJournal.Kind.STOCK && record.outcome() == InventoryAuditJournal.Outcome.OK)
+            {
+                apply(record.productId(), record.warehouseId(), record.delta());
+                applied[0]++;
+            }
+        });
+        if (applied[0] > 0)
+        {
+            log.info("🏭 Rebuilt warehouse stock matrix from {} stock writes in {} ms", applied[0],
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    public void apply(long productId, int warehouseId, int quantityChange)
+    {
+        cells.computeIfAbsent(productId, id -> new ConcurrentHashMap<>()).merge(warehouseId, quantityChange, Integer::sum);
+        warehouseTotals.computeIfAbsent(warehouseId, id -> new LongAdder()).add(quantityChange);
+    }
+
+    /**
+     * Net quantity per warehouse for one product, ordered by warehouse id
+     */
+    public Map<Integer, Integer> breakdown(long productId)
+    {
+        Map<Integer, Integer> row = cells.get(productId);
+        return row != null ? new TreeMap<>(row) : Map.of();
+    }
+
+    /**
+     * Net quantity written through the bot per warehouse, across all products
+     */
+    public Map<Integer, Long> warehouseTotals()
+    {
+        Map<Integer, Long> totals = new TreeMap<>();
+        warehouseTotals.forEach((warehouseId, total) -> totals.put(warehouseId, total.sum()));
+        return totals;
+    }
+}